@@ -0,0 +1,585 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable, point-in-time version of a whole catalog: the topics in order, the words of
+ * each topic, and the word indexes used for search and prefix listing. Nothing reachable
+ * from a snapshot ever changes, so any number of threads can read one without locks, and
+ * a save can write one out while edits carry on. Each edit returns a new snapshot that
+ * shares all but O(log n) of its nodes with the old one.
+ * <p>
+ * Topics are known by a stable id rather than their position, so a word edit only has to
+ * replace the edited topic: the order holds ids, and a map from id holds each topic's
+ * current version.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public final class CatalogSnapshot implements Iterable<CatalogSnapshot.Topic> {
+    private static final char KEY_SEPARATOR = '\0'; // Same sort keys as WordIndex
+    private static final ToIntFunction<Copies> COPIES = copies -> copies.count; // Weight of a sorted word
+    private static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, PersistentList.empty(),
+            PersistentMap.empty(), PersistentMap.empty(), PersistentMap.empty(COPIES));
+
+    /**
+     * One frozen version of a topic. Each copy of a word is keyed by a sequence number given
+     * when it was added, so list order is key order, and each word maps to the keys of its
+     * copies; finding, removing or replacing the first copy of a word takes O(log n).
+     */
+    public static final class Topic implements TopicView {
+        private final Long id;                             // Stable id of the topic
+        private final String name;                         // The topic name
+        private final PersistentMap<Long, String> words;   // The words in order, by sequence number
+        // Sequence numbers of the copies of each word; the values are always TRUE
+        private final PersistentMap<String, PersistentMap<Long, Boolean>> copies;
+        private final long nextSeq;                        // Sequence number of the next word added
+
+        /**
+         * Constructs a topic version.
+         * @param id The stable id of the topic.
+         * @param name The topic name.
+         * @param words The words in order, by sequence number.
+         * @param copies The sequence numbers of each word's copies.
+         * @param nextSeq The sequence number of the next word added, above every one in use.
+         */
+        private Topic(Long id, String name, PersistentMap<Long, String> words,
+                PersistentMap<String, PersistentMap<Long, Boolean>> copies, long nextSeq) {
+            this.id = id;
+            this.name = name;
+            this.words = words;
+            this.copies = copies;
+            this.nextSeq = nextSeq;
+        }
+
+        /**
+         * Freezes a topic in linear time plus a sort of its distinct words.
+         * @param id The stable id of the topic.
+         * @param vocab The topic.
+         * @return The frozen version.
+         */
+        private static Topic of(Long id, TopicView vocab) {
+            ArrayList<Long> seqs = new ArrayList<>(vocab.wordCount());
+            ArrayList<String> inOrder = new ArrayList<>(vocab.wordCount());
+            HashMap<String, ArrayList<Long>> seqsOf = new HashMap<>();
+            for (String word : vocab) {
+                Long seq = (long) seqs.size();
+                seqs.add(seq);
+                inOrder.add(word);
+                seqsOf.computeIfAbsent(word, k -> new ArrayList<>(1)).add(seq);
+            }
+            ArrayList<String> distinct = new ArrayList<>(seqsOf.keySet());
+            Collections.sort(distinct);
+            ArrayList<PersistentMap<Long, Boolean>> wordSeqs = new ArrayList<>(distinct.size());
+            for (String word : distinct) {
+                List<Long> wordSeqList = seqsOf.get(word);
+                wordSeqs.add(PersistentMap.fromSorted(wordSeqList, Collections.nCopies(wordSeqList.size(), Boolean.TRUE)));
+            }
+            return new Topic(id, vocab.getTopic(), PersistentMap.fromSorted(seqs, inOrder),
+                    PersistentMap.fromSorted(distinct, wordSeqs), seqs.size());
+        }
+
+        /**
+         * Returns the stable id of the topic, shared by all of its versions.
+         * @return The id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Gets the topic name.
+         * @return The topic name.
+         */
+        @Override
+        public String getTopic() {
+            return name;
+        }
+
+        /**
+         * Returns the number of words in the topic.
+         * @return The number of words.
+         */
+        @Override
+        public int wordCount() {
+            return words.size();
+        }
+
+        /**
+         * Checks if the topic contains a word.
+         * @param word The word to check.
+         * @return true if the word is found, false otherwise.
+         */
+        public boolean containsWord(String word) {
+            return copies.get(word) != null;
+        }
+
+        /**
+         * Returns an iterator over the words in order.
+         * @return An iterator that does not support removal.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return words.valueIterator();
+        }
+
+        /**
+         * Performs an action on each word in order.
+         * @param action The action.
+         */
+        @Override
+        public void forEach(Consumer<? super String> action) {
+            words.forEach((seq, word) -> action.accept(word));
+        }
+
+        /**
+         * Returns a string representation of this topic, in the same format as Vocab.
+         * @return A string containing the topic and its words.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("Topic: ").append(name).append("\n").append("Words: [");
+            words.forEach((seq, word) -> {
+                if (text.charAt(text.length() - 1) != '[') {
+                    text.append(", ");
+                }
+                text.append(word);
+            });
+            return text.append(']').toString();
+        }
+
+        /**
+         * Copies this version with a word added at the end.
+         * @param word The word.
+         * @return The new version.
+         */
+        private Topic withAdded(String word) {
+            Long seq = nextSeq;
+            return new Topic(id, name, words.put(seq, word), addCopy(copies, word, seq), nextSeq + 1);
+        }
+
+        /**
+         * Copies this version without the first copy of a word.
+         * @param word The word.
+         * @return The new version, or null if the topic does not contain the word.
+         */
+        private Topic withRemoved(String word) {
+            PersistentMap<Long, Boolean> seqs = copies.get(word);
+            if (seqs == null) {
+                return null;
+            }
+            Long seq = seqs.firstKey();
+            return new Topic(id, name, words.remove(seq), removeCopy(copies, word, seq), nextSeq);
+        }
+
+        /**
+         * Copies this version with the first copy of a word replaced, in the same place.
+         * @param oldWord The word to be replaced.
+         * @param newWord The new word.
+         * @return The new version, or null if the topic does not contain the old word.
+         */
+        private Topic withChanged(String oldWord, String newWord) {
+            PersistentMap<Long, Boolean> seqs = copies.get(oldWord);
+            if (seqs == null) {
+                return null;
+            }
+            Long seq = seqs.firstKey();
+            return new Topic(id, name, words.put(seq, newWord),
+                    addCopy(removeCopy(copies, oldWord, seq), newWord, seq), nextSeq);
+        }
+
+        /**
+         * Records a copy of a word.
+         * @param copies The sequence numbers of each word's copies.
+         * @param word The word.
+         * @param seq The sequence number of the copy.
+         * @return The new map.
+         */
+        private static PersistentMap<String, PersistentMap<Long, Boolean>> addCopy(
+                PersistentMap<String, PersistentMap<Long, Boolean>> copies, String word, Long seq) {
+            PersistentMap<Long, Boolean> seqs = copies.get(word);
+            if (seqs == null) {
+                seqs = PersistentMap.empty();
+            }
+            return copies.put(word, seqs.put(seq, Boolean.TRUE));
+        }
+
+        /**
+         * Forgets a copy of a word.
+         * @param copies The sequence numbers of each word's copies.
+         * @param word The word.
+         * @param seq The sequence number of the copy.
+         * @return The new map.
+         */
+        private static PersistentMap<String, PersistentMap<Long, Boolean>> removeCopy(
+                PersistentMap<String, PersistentMap<Long, Boolean>> copies, String word, Long seq) {
+            PersistentMap<Long, Boolean> seqs = copies.get(word).remove(seq);
+            return seqs.isEmpty() ? copies.remove(word) : copies.put(word, seqs);
+        }
+    }
+
+    // Inner class Copies counts the copies of one word across the catalog
+    private static final class Copies {
+        final String word; // The word as stored in the topics
+        final int count;   // Number of copies in the catalog
+
+        /**
+         * Constructs a count.
+         * @param word The word.
+         * @param count The number of copies.
+         */
+        Copies(String word, int count) {
+            this.word = word;
+            this.count = count;
+        }
+    }
+
+    private final long version;                                // Number of edits since the first snapshot
+    private final PersistentList<Long> order;                  // Topic ids in catalog order
+    private final PersistentMap<Long, Topic> topics;           // Current version of each topic
+    // Ids of the topics containing each word; the values are always TRUE
+    private final PersistentMap<String, PersistentMap<Long, Boolean>> postings;
+    private final PersistentMap<String, Copies> sortedWords;   // Copies of each word by sort key, weighed by count
+
+    /**
+     * Constructs a snapshot.
+     * @param version The version number.
+     * @param order The topic ids in order.
+     * @param topics The topics by id.
+     * @param postings The topic ids of each word.
+     * @param sortedWords The copies of each word by sort key.
+     */
+    private CatalogSnapshot(long version, PersistentList<Long> order, PersistentMap<Long, Topic> topics,
+            PersistentMap<String, PersistentMap<Long, Boolean>> postings, PersistentMap<String, Copies> sortedWords) {
+        this.version = version;
+        this.order = order;
+        this.topics = topics;
+        this.postings = postings;
+        this.sortedWords = sortedWords;
+    }
+
+    /**
+     * Returns the snapshot of an empty catalog.
+     * @return The empty snapshot.
+     */
+    public static CatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a snapshot of existing topics in linear time plus a sort of the distinct words,
+     * rather than by one edit per word.
+     * @param vocabs The topics in order.
+     * @param ids The id of each topic, in the same order.
+     * @return The snapshot.
+     */
+    public static CatalogSnapshot of(List<? extends TopicView> vocabs, List<Long> ids) {
+        ArrayList<Topic> versions = new ArrayList<>(vocabs.size());
+        HashMap<String, ArrayList<Long>> topicIds = new HashMap<>();
+        HashMap<String, int[]> counts = new HashMap<>(); // Copies of each word, boxed once per word
+        for (int i = 0; i < vocabs.size(); i++) {
+            TopicView vocab = vocabs.get(i);
+            Long id = ids.get(i);
+            versions.add(Topic.of(id, vocab));
+            for (String word : vocab) {
+                ArrayList<Long> containing = topicIds.computeIfAbsent(word, k -> new ArrayList<>(1));
+                if (containing.isEmpty() || !containing.get(containing.size() - 1).equals(id)) {
+                    containing.add(id);
+                }
+                counts.computeIfAbsent(word, k -> new int[1])[0]++;
+            }
+        }
+
+        ArrayList<Long> sortedIds = new ArrayList<>(ids);
+        Collections.sort(sortedIds);
+        HashMap<Long, Topic> byId = new HashMap<>();
+        for (Topic topic : versions) {
+            byId.put(topic.id, topic);
+        }
+        ArrayList<Topic> sortedVersions = new ArrayList<>(sortedIds.size());
+        for (Long id : sortedIds) {
+            sortedVersions.add(byId.get(id));
+        }
+
+        ArrayList<String> words = new ArrayList<>(topicIds.keySet());
+        Collections.sort(words);
+        ArrayList<PersistentMap<Long, Boolean>> containing = new ArrayList<>(words.size());
+        for (String word : words) {
+            ArrayList<Long> wordIds = topicIds.get(word);
+            Collections.sort(wordIds);
+            containing.add(PersistentMap.fromSorted(wordIds, Collections.nCopies(wordIds.size(), Boolean.TRUE)));
+        }
+
+        HashMap<String, Copies> byKey = new HashMap<>();
+        counts.forEach((word, count) -> byKey.put(sortKey(word), new Copies(word, count[0])));
+        ArrayList<String> keys = new ArrayList<>(byKey.keySet());
+        Collections.sort(keys);
+        ArrayList<Copies> sortedCopies = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            sortedCopies.add(byKey.get(key));
+        }
+
+        return new CatalogSnapshot(0, PersistentList.of(ids), PersistentMap.fromSorted(sortedIds, sortedVersions),
+                PersistentMap.fromSorted(words, containing), PersistentMap.fromSorted(keys, sortedCopies, COPIES));
+    }
+
+    /**
+     * Returns the version number, which grows by one with each edit.
+     * @return The version.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the number of topics.
+     * @return The number of topics.
+     */
+    public int size() {
+        return order.size();
+    }
+
+    /**
+     * Retrieves the topic at a position.
+     * @param position The index of the topic.
+     * @return The topic, or null if the position is out of bounds.
+     */
+    public Topic topicAt(int position) {
+        if (position < 0 || position >= order.size()) {
+            return null;
+        }
+        return topics.get(order.get(position));
+    }
+
+    /**
+     * Returns an iterator over the topics in order.
+     * @return An iterator that does not support removal.
+     */
+    @Override
+    public Iterator<Topic> iterator() {
+        Iterator<Long> ids = order.iterator();
+        return new Iterator<Topic>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Topic next() {
+                return topics.get(ids.next());
+            }
+        };
+    }
+
+    /**
+     * Looks up the topics containing a word.
+     * @param word The word to search for; surrounding whitespace is ignored.
+     * @return The topics containing the word, oldest topic first, empty if there are none.
+     */
+    public List<Topic> topicsContaining(String word) {
+        PersistentMap<Long, Boolean> ids = postings.get(word.trim());
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<Topic> found = new ArrayList<>(ids.size());
+        ids.forEach((id, present) -> found.add(topics.get(id)));
+        return found;
+    }
+
+    /**
+     * Lists every word in the catalog that starts with a prefix, ignoring case.
+     * @param prefix The prefix to match.
+     * @return The matching words sorted case-insensitively, one entry per copy in the catalog.
+     */
+    public List<String> wordsStartingWith(String prefix) {
+        return wordsStartingWith(prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lists the first words in the catalog that start with a prefix, ignoring case. The walk
+     * stops as soon as the limit is reached, so it costs O(log n + limit).
+     * @param prefix The prefix to match.
+     * @param limit The most words to list.
+     * @return The matching words sorted case-insensitively, one entry per copy in the catalog.
+     */
+    public List<String> wordsStartingWith(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        ArrayList<String> words = new ArrayList<>();
+        Iterator<Copies> matches = sortedWords.valueIterator(from, from + Character.MAX_VALUE);
+        while (words.size() < limit && matches.hasNext()) {
+            Copies copies = matches.next();
+            for (int i = 0; i < copies.count && words.size() < limit; i++) {
+                words.add(copies.word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Counts the words in the catalog that start with a prefix, ignoring case, without listing
+     * them. Each node of the sorted words keeps the copies in its subtree, so this is O(log n).
+     * @param prefix The prefix to match.
+     * @return The number of matching words, counting every copy in the catalog.
+     */
+    public int countWordsStartingWith(String prefix) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        return (int) sortedWords.weightBetween(from, from + Character.MAX_VALUE);
+    }
+
+    /**
+     * Returns a snapshot with a new topic inserted.
+     * @param position The index to insert at, from 0 to the size.
+     * @param id The stable id of the topic, not used by any other topic.
+     * @param vocab The topic.
+     * @return The new snapshot.
+     */
+    public CatalogSnapshot withTopicInserted(int position, long id, TopicView vocab) {
+        Long key = id;
+        Topic topic = Topic.of(key, vocab);
+        PersistentMap<String, PersistentMap<Long, Boolean>> newPostings = postings;
+        PersistentMap<String, Copies> newSorted = sortedWords;
+        for (String word : topic) {
+            newPostings = post(newPostings, word, key);
+            newSorted = count(newSorted, word, 1);
+        }
+        return new CatalogSnapshot(version + 1, order.insert(position, key), topics.put(key, topic),
+                newPostings, newSorted);
+    }
+
+    /**
+     * Returns a snapshot without the topic at a position.
+     * @param position The index of the topic.
+     * @return The new snapshot.
+     */
+    public CatalogSnapshot withTopicRemoved(int position) {
+        Long key = order.get(position);
+        Topic topic = topics.get(key);
+        PersistentMap<String, PersistentMap<Long, Boolean>> newPostings = postings;
+        PersistentMap<String, Copies> newSorted = sortedWords;
+        for (String word : topic) {
+            newPostings = unpost(newPostings, word, key);
+            newSorted = count(newSorted, word, -1);
+        }
+        return new CatalogSnapshot(version + 1, order.remove(position), topics.remove(key),
+                newPostings, newSorted);
+    }
+
+    /**
+     * Returns a snapshot in which a topic has a word added at the end.
+     * @param id The id of the topic.
+     * @param word The word.
+     * @return The new snapshot.
+     */
+    public CatalogSnapshot withWordAdded(long id, String word) {
+        Topic topic = topics.get(id);
+        return new CatalogSnapshot(version + 1, order, topics.put(topic.id, topic.withAdded(word)),
+                post(postings, word, topic.id), count(sortedWords, word, 1));
+    }
+
+    /**
+     * Returns a snapshot in which a topic has lost the first copy of a word.
+     * @param id The id of the topic.
+     * @param word The word.
+     * @return The new snapshot, or this snapshot if the topic does not contain the word.
+     */
+    public CatalogSnapshot withWordRemoved(long id, String word) {
+        Topic topic = topics.get(id);
+        Topic changed = topic.withRemoved(word);
+        if (changed == null) {
+            return this;
+        }
+        PersistentMap<String, PersistentMap<Long, Boolean>> newPostings = postings;
+        if (!changed.containsWord(word)) {
+            newPostings = unpost(newPostings, word, topic.id);
+        }
+        return new CatalogSnapshot(version + 1, order, topics.put(topic.id, changed),
+                newPostings, count(sortedWords, word, -1));
+    }
+
+    /**
+     * Returns a snapshot in which the first copy of a word in a topic is replaced.
+     * @param id The id of the topic.
+     * @param oldWord The word to be replaced.
+     * @param newWord The new word.
+     * @return The new snapshot, or this snapshot if the topic does not contain the old word.
+     */
+    public CatalogSnapshot withWordChanged(long id, String oldWord, String newWord) {
+        Topic topic = topics.get(id);
+        Topic changed = topic.withChanged(oldWord, newWord);
+        if (changed == null) {
+            return this;
+        }
+        PersistentMap<String, PersistentMap<Long, Boolean>> newPostings = postings;
+        if (!changed.containsWord(oldWord)) {
+            newPostings = unpost(newPostings, oldWord, topic.id);
+        }
+        newPostings = post(newPostings, newWord, topic.id);
+        return new CatalogSnapshot(version + 1, order, topics.put(topic.id, changed),
+                newPostings, count(count(sortedWords, oldWord, -1), newWord, 1));
+    }
+
+    /**
+     * Records that a topic contains a word.
+     * @param postings The postings to update.
+     * @param word The word.
+     * @param id The id of the topic.
+     * @return The new postings.
+     */
+    private static PersistentMap<String, PersistentMap<Long, Boolean>> post(
+            PersistentMap<String, PersistentMap<Long, Boolean>> postings, String word, Long id) {
+        PersistentMap<Long, Boolean> ids = postings.get(word);
+        if (ids == null) {
+            ids = PersistentMap.empty();
+        } else if (ids.get(id) != null) {
+            return postings; // Already listed for an earlier copy of the word
+        }
+        return postings.put(word, ids.put(id, Boolean.TRUE));
+    }
+
+    /**
+     * Records that a topic no longer contains a word.
+     * @param postings The postings to update.
+     * @param word The word.
+     * @param id The id of the topic.
+     * @return The new postings.
+     */
+    private static PersistentMap<String, PersistentMap<Long, Boolean>> unpost(
+            PersistentMap<String, PersistentMap<Long, Boolean>> postings, String word, Long id) {
+        PersistentMap<Long, Boolean> ids = postings.get(word);
+        if (ids == null) {
+            return postings;
+        }
+        ids = ids.remove(id);
+        return ids.isEmpty() ? postings.remove(word) : postings.put(word, ids);
+    }
+
+    /**
+     * Adjusts the number of copies of a word.
+     * @param sortedWords The counts to update.
+     * @param word The word.
+     * @param delta The number of copies added, or removed if negative.
+     * @return The new counts.
+     */
+    private static PersistentMap<String, Copies> count(PersistentMap<String, Copies> sortedWords, String word, int delta) {
+        String key = sortKey(word);
+        Copies copies = sortedWords.get(key);
+        int count = (copies == null ? 0 : copies.count) + delta;
+        if (count <= 0) {
+            return sortedWords.remove(key);
+        }
+        return sortedWords.put(key, new Copies(copies == null ? word : copies.word, count));
+    }
+
+    /**
+     * Builds the sorted key of a word, as WordIndex does.
+     * @param word The word.
+     * @return The key of the word.
+     */
+    private static String sortKey(String word) {
+        return word.toLowerCase(Locale.ROOT) + KEY_SEPARATOR + word;
+    }
+}
@@ -0,0 +1,497 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.BiPredicate;
+
+/**
+ * Thread-safe catalog of topics and their word index, for many readers and editors at once.
+ * Three kinds of lock keep it consistent, always taken in this order:
+ * the structure lock guards the order of the topics, so inserting and removing topics is
+ * serialized while positional reads share it (and size is read optimistically);
+ * one of a fixed set of striped locks guards the words of each topic, so word edits in
+ * different topics run in parallel; and a short index lock guards the word index itself.
+ * Word edits hold the structure lock shared, which only keeps their topic from being
+ * removed underneath them.
+ * <p>
+ * Every change also publishes a new immutable CatalogSnapshot while the index lock is held,
+ * so readers that can work from a snapshot take no lock at all: one volatile read gives
+ * them a consistent catalog, however long they keep it.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class ConcurrentCatalog {
+    private static final int STRIPE_BITS = 6; // 64 word locks shared by every topic
+
+    private final TopicList<Vocab> topics; // The topics, in catalog order
+    private final WordIndex index;         // Word index, in step with the topics
+    // Stable id of each topic currently in the catalog, so edits through a stale reference
+    // are refused and snapshots can find the topic without knowing its position
+    private final IdentityHashMap<Vocab, Long> ids = new IdentityHashMap<>();
+    private long nextId;                                     // Id of the next topic inserted
+    private final StampedLock structure = new StampedLock(); // Guards topics, ids and nextId
+    private final StampedLock[] stripes = new StampedLock[1 << STRIPE_BITS]; // Guard topic words
+    private final StampedLock indexLock = new StampedLock(); // Guards index and publishing
+    private volatile CatalogSnapshot published;              // Latest snapshot of the catalog
+
+    /**
+     * Constructs a catalog over topics, indexing their words.
+     * The topics should not be used directly once the catalog owns them.
+     * @param topics The topics.
+     */
+    public ConcurrentCatalog(TopicList<Vocab> topics) {
+        this(topics, indexOf(topics));
+    }
+
+    /**
+     * Constructs a catalog over topics and an index that is already in step with them.
+     * Neither should be used directly once the catalog owns them.
+     * @param topics The topics.
+     * @param index The word index of the topics.
+     */
+    public ConcurrentCatalog(TopicList<Vocab> topics, WordIndex index) {
+        this.topics = topics;
+        this.index = index;
+        ArrayList<Vocab> vocabs = new ArrayList<>(topics.size());
+        ArrayList<Long> order = new ArrayList<>(topics.size());
+        for (Vocab vocab : topics) {
+            Long id = nextId++;
+            ids.put(vocab, id);
+            vocabs.add(vocab);
+            order.add(id);
+        }
+        published = CatalogSnapshot.of(vocabs, order);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Builds the word index of some topics.
+     * @param topics The topics.
+     * @return Their index.
+     */
+    private static WordIndex indexOf(TopicList<Vocab> topics) {
+        WordIndex index = new WordIndex();
+        for (Vocab vocab : topics) {
+            index.addTopic(vocab);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the latest snapshot of the catalog, without taking any lock. The snapshot
+     * never changes, so it can be browsed, searched or saved while edits carry on.
+     * @return The snapshot published by the last completed change.
+     */
+    public CatalogSnapshot snapshot() {
+        return published;
+    }
+
+    /**
+     * Returns the number of topics, without blocking unless a topic is being inserted or removed.
+     * @return The number of topics.
+     */
+    public int size() {
+        long stamp = structure.tryOptimisticRead();
+        int size = topics.size();
+        if (!structure.validate(stamp)) {
+            stamp = structure.readLock();
+            try {
+                size = topics.size();
+            } finally {
+                structure.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Retrieves the topic at a position. Lookups share a read lock rather than reading
+     * optimistically, since the linked list moves its finger as it walks.
+     * @param position The index of the topic.
+     * @return The topic, or null if the position is out of bounds.
+     */
+    public Vocab topicAt(int position) {
+        long stamp = structure.readLock();
+        try {
+            return topics.getVocabByIndex(position);
+        } finally {
+            structure.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Performs an action on each topic in order, while topics cannot be inserted or removed.
+     * @param action The action to perform on each topic.
+     */
+    public void forEachTopic(Consumer<? super Vocab> action) {
+        long stamp = structure.readLock();
+        try {
+            for (Vocab vocab : topics) {
+                action.accept(vocab);
+            }
+        } finally {
+            structure.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Inserts a new topic before a position.
+     * @param position The index to insert at; the size of the catalog appends the topic.
+     * @param vocab The new topic.
+     * @throws IndexOutOfBoundsException if the position is not between 0 and the size.
+     */
+    public void insertBefore(int position, Vocab vocab) {
+        long stamp = structure.writeLock();
+        try {
+            if (position < 0 || position > topics.size()) {
+                throw new IndexOutOfBoundsException("Position " + position + " of " + topics.size());
+            }
+            topics.addBefore(position, vocab);
+            addTopic(position, vocab);
+        } finally {
+            structure.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Inserts a new topic after a position.
+     * @param position The index of the topic to insert after.
+     * @param vocab The new topic.
+     * @throws IndexOutOfBoundsException if there is no topic at the position.
+     */
+    public void insertAfter(int position, Vocab vocab) {
+        long stamp = structure.writeLock();
+        try {
+            if (position < 0 || position >= topics.size()) {
+                throw new IndexOutOfBoundsException("Position " + position + " of " + topics.size());
+            }
+            topics.addAfter(position, vocab);
+            addTopic(position + 1, vocab);
+        } finally {
+            structure.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the topic at a position and drops its words from the index.
+     * @param position The index of the topic.
+     * @return The removed topic, or null if the position is out of bounds.
+     */
+    public Vocab removeAt(int position) {
+        long stamp = structure.writeLock();
+        try {
+            Vocab vocab = topics.removeAt(position);
+            if (vocab != null) {
+                ids.remove(vocab);
+                StampedLock stripe = stripeOf(vocab);
+                long words = stripe.readLock(); // Edits that got in first have finished
+                try {
+                    long locked = indexLock.writeLock();
+                    try {
+                        index.removeTopic(vocab);
+                        published = published.withTopicRemoved(position);
+                    } finally {
+                        indexLock.unlockWrite(locked);
+                    }
+                } finally {
+                    stripe.unlockRead(words);
+                }
+                renewDictionaryIfStale();
+            }
+            return vocab;
+        } finally {
+            structure.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds a word to a topic.
+     * @param vocab The topic to add to.
+     * @param word The word to add.
+     * @return true if the word is added, false if the topic is no longer in the catalog.
+     */
+    public boolean addWord(Vocab vocab, String word) {
+        return edit(vocab, (v, id) -> {
+            boolean present = v.containsWord(word);
+            v.addWord(word);
+            long locked = indexLock.writeLock();
+            try {
+                index.wordAdded(v, word, present);
+                published = published.withWordAdded(id, word);
+            } finally {
+                indexLock.unlockWrite(locked);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Removes a word from a topic.
+     * @param vocab The topic to remove from.
+     * @param word The word to remove.
+     * @return true if the word is removed, false if it is not in the topic or the topic
+     *         is no longer in the catalog.
+     */
+    public boolean removeWord(Vocab vocab, String word) {
+        boolean removed = edit(vocab, (v, id) -> {
+            if (!v.removeWord(word)) {
+                return false;
+            }
+            long locked = indexLock.writeLock();
+            try {
+                index.wordRemoved(v, word);
+                published = published.withWordRemoved(id, word);
+            } finally {
+                indexLock.unlockWrite(locked);
+            }
+            return true;
+        });
+        if (removed && dictionaryStale()) {
+            renewDictionary();
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces a word in a topic.
+     * @param vocab The topic to change.
+     * @param oldWord The word to be replaced.
+     * @param newWord The new word to replace with.
+     * @return true if the word is replaced, false if it is not in the topic or the topic
+     *         is no longer in the catalog.
+     */
+    public boolean changeWord(Vocab vocab, String oldWord, String newWord) {
+        boolean changed = edit(vocab, (v, id) -> {
+            boolean present = v.containsWord(newWord);
+            if (!v.changeWord(oldWord, newWord)) {
+                return false;
+            }
+            long locked = indexLock.writeLock();
+            try {
+                index.wordChanged(v, oldWord, newWord, present);
+                published = published.withWordChanged(id, oldWord, newWord);
+            } finally {
+                indexLock.unlockWrite(locked);
+            }
+            return true;
+        });
+        if (changed && dictionaryStale()) {
+            renewDictionary();
+        }
+        return changed;
+    }
+
+    /**
+     * Checks if a topic contains a word.
+     * @param vocab The topic.
+     * @param word The word to check.
+     * @return true if the word is found, false otherwise.
+     */
+    public boolean containsWord(Vocab vocab, String word) {
+        StampedLock stripe = stripeOf(vocab);
+        long stamp = stripe.readLock();
+        try {
+            return vocab.containsWord(word);
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copies the words of a topic as they are at one moment.
+     * @param vocab The topic.
+     * @return The words of the topic in order.
+     */
+    public List<String> wordsOf(Vocab vocab) {
+        StampedLock stripe = stripeOf(vocab);
+        long stamp = stripe.readLock();
+        try {
+            return vocab.getWords();
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks up the topics containing a word.
+     * @param word The word to search for; surrounding whitespace is ignored.
+     * @return A copy of the list of topics containing the word, empty if there are none.
+     */
+    public List<Vocab> topicsContaining(String word) {
+        long stamp = indexLock.readLock();
+        try {
+            return new ArrayList<>(index.topicsContaining(word));
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Lists every word in the catalog that starts with a prefix, ignoring case.
+     * @param prefix The prefix to match.
+     * @return The matching words sorted case-insensitively, one entry per copy in the catalog.
+     */
+    public List<String> wordsStartingWith(String prefix) {
+        long stamp = indexLock.readLock();
+        try {
+            return index.wordsStartingWith(prefix);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks that the catalog is consistent: walking the topics finds as many as size
+     * reports, each only once, the index lists every topic under each of its words,
+     * and the published snapshot holds the same topics and words.
+     * Takes every lock, so it is meant for tests and diagnostics.
+     * @return null if the catalog is consistent, otherwise a description of the first problem.
+     */
+    public String verify() {
+        long stamp = structure.writeLock();
+        try {
+            Set<Vocab> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            CatalogSnapshot snapshot = published;
+            for (Vocab vocab : topics) {
+                if (!seen.add(vocab)) {
+                    return "Topic " + vocab.getTopic() + " is linked twice";
+                }
+                CatalogSnapshot.Topic frozen = snapshot.topicAt(seen.size() - 1);
+                ArrayList<String> frozenWords = new ArrayList<>();
+                if (frozen != null) {
+                    frozen.forEach(frozenWords::add);
+                }
+                if (frozen == null || !frozen.getTopic().equals(vocab.getTopic()) || !frozenWords.equals(vocab.getWords())) {
+                    return "Snapshot differs at topic " + vocab.getTopic();
+                }
+                if (!ids.containsKey(vocab)) {
+                    return "Topic " + vocab.getTopic() + " is linked but was removed";
+                }
+                for (String word : vocab) {
+                    if (!index.topicsContaining(word).contains(vocab)) {
+                        return "Word " + word + " of topic " + vocab.getTopic() + " is not indexed";
+                    }
+                }
+            }
+            if (seen.size() != topics.size()) {
+                return "Walked " + seen.size() + " topics but size is " + topics.size();
+            }
+            if (seen.size() != ids.size()) {
+                return "Walked " + seen.size() + " topics but " + ids.size() + " are live";
+            }
+            if (snapshot.size() != seen.size()) {
+                return "Walked " + seen.size() + " topics but the snapshot has " + snapshot.size();
+            }
+            return null;
+        } finally {
+            structure.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Runs a change on a topic while it is known to be in the catalog and no one else
+     * is changing or reading its words.
+     * @param vocab The topic to change.
+     * @param change The change, given the topic and its id; it also updates the index and the
+     *               snapshot, and returns whether it changed anything.
+     * @return The result of the change, or false if the topic is no longer in the catalog.
+     */
+    private boolean edit(Vocab vocab, BiPredicate<Vocab, Long> change) {
+        long stamp = structure.readLock();
+        try {
+            Long id = ids.get(vocab);
+            if (id == null) {
+                return false;
+            }
+            StampedLock stripe = stripeOf(vocab);
+            long words = stripe.writeLock();
+            try {
+                return change.test(vocab, id);
+            } finally {
+                stripe.unlockWrite(words);
+            }
+        } finally {
+            structure.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Records and indexes a topic just linked into the list; the caller holds the structure lock.
+     * @param position The index the topic was linked at.
+     * @param vocab The new topic.
+     */
+    private void addTopic(int position, Vocab vocab) {
+        long id = nextId++;
+        ids.put(vocab, id);
+        long locked = indexLock.writeLock();
+        try {
+            index.addTopic(vocab);
+            published = published.withTopicInserted(position, id, vocab);
+        } finally {
+            indexLock.unlockWrite(locked);
+        }
+    }
+
+    /**
+     * Checks whether the shared word dictionary is stale for the words still in the catalog.
+     * @return true if the dictionary should be renewed.
+     */
+    private boolean dictionaryStale() {
+        long locked = indexLock.readLock();
+        try {
+            return WordDictionary.shared().isStale(index.distinctWords());
+        } finally {
+            indexLock.unlockRead(locked);
+        }
+    }
+
+    /**
+     * Moves every topic to a new word dictionary if it is still stale once word edits have
+     * stopped, so the dictionary does not keep every word a long session ever saw.
+     * Takes the structure lock exclusively, which waits for running word edits to finish.
+     */
+    private void renewDictionary() {
+        long stamp = structure.writeLock();
+        try {
+            renewDictionaryIfStale();
+        } finally {
+            structure.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Moves every topic to a new word dictionary if the shared one is stale; the caller holds
+     * the structure lock exclusively, so no word edit is running. Each topic's word lock is
+     * taken while its words move, since word reads only hold that lock.
+     */
+    private void renewDictionaryIfStale() {
+        if (!dictionaryStale()) {
+            return;
+        }
+        WordDictionary.setShared(new WordDictionary());
+        for (Vocab vocab : topics) {
+            StampedLock stripe = stripeOf(vocab);
+            long words = stripe.writeLock();
+            try {
+                vocab.renewWords();
+            } finally {
+                stripe.unlockWrite(words);
+            }
+        }
+    }
+
+    /**
+     * Picks the lock guarding the words of a topic.
+     * @param vocab The topic.
+     * @return The striped lock of the topic.
+     */
+    private StampedLock stripeOf(Vocab vocab) {
+        int hash = System.identityHashCode(vocab) * 0x9E3779B9; // Spread before taking the top bits
+        return stripes[hash >>> (32 - STRIPE_BITS)];
+    }
+}
@@ -1,11 +1,20 @@
 
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
 /**
  * Represents a doubly linked list data structure.
  * @author Mehdi Hanini
  * @version 4/15/2024
  * @param <E> The type of elements stored in the list.
  */
-public class DoublyLinkedList<E> {
+public class DoublyLinkedList<E> implements TopicList<E> {
     
 	// Inner class DNode represents a node in the doubly linked list
     private static class DNode<E> {
@@ -25,10 +34,30 @@ public class DoublyLinkedList<E> {
             this.prev = prev;
         }
     }
+
+    // Inner class Finger pairs a node with its index. It is replaced rather than updated,
+    // so concurrent readers sharing a read lock never see a node with another node's index
+    private static class Finger<E> {
+        final DNode<E> node; // The node last reached by positional access
+        final int index;     // Index of that node
+
+        /**
+         * Constructs a finger.
+         * @param node The node.
+         * @param index The index of the node.
+         */
+        Finger(DNode<E> node, int index) {
+            this.node = node;
+            this.index = index;
+        }
+    }
 	
 	private DNode<E> head; // Head node of the list
     private DNode<E> tail; // Tail node of the list
     private int size;      // Number of nodes in the list
+    private int modCount;  // Number of structural changes, used by iterators to fail fast
+    private Finger<E> finger; // Last node reached by positional access, or null
+    private static final VocabMetrics.Histogram LOOKUPS = VocabMetrics.shared().lookups("linked"); // Nodes per lookup
 
     /**
      * Constructs an empty doubly linked list.
@@ -69,6 +98,10 @@ public class DoublyLinkedList<E> {
         }
         head = newNode;
         size++;
+        modCount++;
+        if (finger != null) { // Every existing node moved one position back
+            finger = new Finger<>(finger.node, finger.index + 1);
+        }
     }
 
     /**
@@ -84,6 +117,7 @@ public class DoublyLinkedList<E> {
         }
         tail = newNode;
         size++;
+        modCount++;
     }
     
 
@@ -97,6 +131,9 @@ public class DoublyLinkedList<E> {
             }
 
             E element = head.element;
+            if (finger != null) { // Every remaining node moved one position forward
+                finger = finger.node == head ? null : new Finger<>(finger.node, finger.index - 1);
+            }
             if (size == 1) {
                 head = null;
                 tail = null;
@@ -105,6 +142,7 @@ public class DoublyLinkedList<E> {
                 head.prev = null;
             }
             size--;
+            modCount++;
             return element;
         }
 
@@ -118,6 +156,9 @@ public class DoublyLinkedList<E> {
             }
 
             E element = tail.element;
+            if (finger != null && finger.node == tail) {
+                finger = null;
+            }
             if (size == 1) {
                 head = null;
                 tail = null;
@@ -126,20 +167,71 @@ public class DoublyLinkedList<E> {
                 tail.next = null;
             }
             size--;
+            modCount++;
             return element;
         }
     
+    /**
+     * Moves every element of another list to the end of this list, in constant time.
+     * The other list is left empty.
+     * @param other The list whose elements to move.
+     */
+    public void appendAll(DoublyLinkedList<E> other) {
+        if (other == this || other.isEmpty()) {
+            return;
+        }
+        if (isEmpty()) {
+            head = other.head;
+        } else {
+            tail.next = other.head;
+            other.head.prev = tail;
+        }
+        tail = other.tail;
+        size += other.size;
+        modCount++;
+        other.clear();
+    }
+
     /**
      * Displays the topics stored in the list of type Vocab.
      */
     public void displayTopics() {
+        // Built first and printed in one write, since a catalog can have many thousand topics
+        StringBuilder text = new StringBuilder();
         DNode current = head;
         int index = 1;
         while (current != null) {
-            System.out.println(index + ": " + ((Vocab)current.element).getTopic());
+            text.append(index).append(": ").append(((Vocab)current.element).getTopic()).append(System.lineSeparator());
             current = current.next;
             index++;
         }
+        System.out.print(text);
+    }
+
+    /**
+     * Returns a page of consecutive elements. The page starts from the node nearest to it,
+     * and the finger is left on its last node, so fetching the next or previous page costs
+     * only the length of the page.
+     * @param from The position of the first element of the page.
+     * @param count The most elements on the page.
+     * @return The elements from the position on, at most count of them, or an empty list if
+     *         the position is out of bounds.
+     */
+    public List<E> page(int from, int count) {
+        ArrayList<E> page = new ArrayList<>();
+        if (from < 0 || from >= size || count <= 0) {
+            return page;
+        }
+        DNode<E> current = node(from);
+        int index = from;
+        page.add(current.element);
+        while (page.size() < count && current.next != null) {
+            current = current.next;
+            index++;
+            page.add(current.element);
+        }
+        finger = new Finger<>(current, index);
+        return page;
     }
 
     /**
@@ -149,6 +241,8 @@ public class DoublyLinkedList<E> {
         head = null;
         tail = null;
         size = 0;
+        modCount++;
+        finger = null;
     }
     
     /**
@@ -160,11 +254,7 @@ public class DoublyLinkedList<E> {
         if (index < 0 || index >= size) {
             return null; // Index out of bounds
         }
-        DNode<E> current = head;
-        for (int i = 0; i < index; i++) {
-            current = current.next;
-        }
-        return (Vocab) current.element; 
+        return (Vocab) node(index).element;
     }
 
     /**
@@ -182,16 +272,14 @@ public class DoublyLinkedList<E> {
                 return;
             }
 
-            DNode<E> current = head;
-            for (int i = 0; i < position; i++) {
-                current = current.next;
-            }
+            DNode<E> current = node(position);
 
             DNode<E> newNode = new DNode<>(element, current, current.prev);
             current.prev.next = newNode;
             current.prev = newNode;
             size++;
-        
+            modCount++;
+            finger = new Finger<>(newNode, position); // The new node now sits at the given position
     }
         
     /**
@@ -205,15 +293,14 @@ public class DoublyLinkedList<E> {
                 return;
             }
 
-            DNode<E> current = head;
-            for (int i = 0; i < position; i++) {
-                current = current.next;
-            }
+            DNode<E> current = node(position);
 
             DNode<E> newNode = new DNode<>(element, current.next, current);
             current.next.prev = newNode;
             current.next = newNode;
             size++;
+            modCount++;
+            finger = new Finger<>(newNode, position + 1);
         }
   
     /**
@@ -226,20 +313,238 @@ public class DoublyLinkedList<E> {
                 return null; // Position out of bounds
             }
 
-            DNode<E> current = head;
             if (position == 0) { // Remove from the beginning
                 return removeFirst();
             } else if (position == size - 1) { // Remove from the end
                 return removeLast();
             } else { // Remove from the middle
-                for (int i = 0; i < position; i++) {
-                    current = current.next;
-                }
+                DNode<E> current = node(position);
                 current.prev.next = current.next;
                 current.next.prev = current.prev;
                 size--;
+                modCount++;
+                finger = new Finger<>(current.next, position); // Its successor takes over the position
                 return current.element;
             }
 
         }
+
+    /**
+     * Returns an iterator over the elements in this list, from head to tail.
+     * @return A fail-fast iterator over the list.
+     */
+    @Override
+    public ListIterator<E> iterator() {
+        return new ListItr(0);
+    }
+
+    /**
+     * Returns a list iterator positioned before the element at the given index.
+     * @param index The index of the first element to be returned by next().
+     * @return A fail-fast list iterator over the list.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new ListItr(index);
+    }
+
+    /**
+     * Performs the given action on each element of the list in order, in one pass.
+     * @param action The action to perform on each element.
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        int expectedModCount = modCount;
+        for (DNode<E> current = head; current != null; current = current.next) {
+            action.accept(current.element);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Returns a spliterator over the elements in this list.
+     * @return An ordered, sized spliterator backed by a fail-fast iterator.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED);
+    }
+
+    // ListIterator over the nodes; fails fast if the list is changed by anything else
+    private class ListItr implements ListIterator<E> {
+        private DNode<E> next;          // Node returned by the next call to next()
+        private DNode<E> lastReturned;  // Node returned by the last call to next() or previous()
+        private int nextIndex;          // Index of the next node
+        private int expectedModCount = modCount;
+
+        /**
+         * Constructs an iterator positioned before the given index.
+         * @param index The index of the first element to be returned by next().
+         */
+        ListItr(int index) {
+            next = (index == size) ? null : node(index);
+            nextIndex = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public E next() {
+            checkForComodification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            nextIndex++;
+            return lastReturned.element;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public E previous() {
+            checkForComodification();
+            if (!hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            next = (next == null) ? tail : next.prev;
+            lastReturned = next;
+            nextIndex--;
+            return lastReturned.element;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (lastReturned == next) { // Last move was previous()
+                next = next.next;
+            } else {
+                nextIndex--;
+            }
+            unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(E element) {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            lastReturned.element = element;
+        }
+
+        @Override
+        public void add(E element) {
+            checkForComodification();
+            if (next == null) {
+                addLast(element);
+            } else if (next.prev == null) {
+                addFirst(element);
+            } else {
+                DNode<E> newNode = new DNode<>(element, next, next.prev);
+                next.prev.next = newNode;
+                next.prev = newNode;
+                size++;
+                modCount++;
+                finger = null;
+            }
+            lastReturned = null;
+            nextIndex++;
+            expectedModCount = modCount;
+        }
+
+        /**
+         * Throws if the list was structurally changed outside this iterator.
+         */
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Unlinks the given node from the list.
+     * @param node The node to remove.
+     */
+    private void unlink(DNode<E> node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        size--;
+        modCount++;
+        finger = null;
+    }
+
+    /**
+     * Finds the node at the given index, walking from whichever of the head, the tail
+     * or the last accessed node is closest, and remembers it for the next lookup.
+     * @param index The index of the node, which must be in bounds.
+     * @return The node at the given index.
+     */
+    private DNode<E> node(int index) {
+        DNode<E> current;
+        int currentIndex;
+        if (index < size - 1 - index) {
+            current = head;
+            currentIndex = 0;
+        } else {
+            current = tail;
+            currentIndex = size - 1;
+        }
+        Finger<E> last = finger; // Read once, since readers sharing a lock may replace it
+        if (last != null && Math.abs(index - last.index) < Math.abs(index - currentIndex)) {
+            current = last.node;
+            currentIndex = last.index;
+        }
+        if (VocabMetrics.recording()) {
+            LOOKUPS.record(Math.abs(index - currentIndex));
+        }
+        while (currentIndex < index) {
+            current = current.next;
+            currentIndex++;
+        }
+        while (currentIndex > index) {
+            current = current.prev;
+            currentIndex--;
+        }
+        if (last == null || last.node != current) {
+            finger = new Finger<>(current, index);
+        }
+        return current;
+    }
 }
@@ -0,0 +1,337 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Represents a positional list backed by an indexable skip list.
+ * Every forward link records how many positions it skips, so lookups,
+ * insertions and removals by index take O(log n) expected time instead of a walk.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ * @param <E> The type of elements stored in the list.
+ */
+public class IndexableSkipList<E> implements TopicList<E> {
+
+    private static final int MAX_LEVEL = 32; // Enough levels for any int-sized list
+
+    // Inner class SkipNode represents a tower of forward links in the skip list
+    private static class SkipNode<E> {
+        E element;              // The element stored at this node
+        SkipNode<E>[] next;     // Forward link at each level of the tower
+        int[] width;            // Number of positions each forward link skips
+
+        /**
+         * Constructs a node with the given element and tower height.
+         * @param element The element to store in the node.
+         * @param level The number of levels in the tower.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        SkipNode(E element, int level) {
+            this.element = element;
+            this.next = (SkipNode<E>[]) new SkipNode[level];
+            this.width = new int[level];
+        }
+    }
+
+    private final SkipNode<E> head = new SkipNode<>(null, MAX_LEVEL); // Sentinel before position 0
+    private final Random random = new Random();
+    private final SkipNode<E>[] update = newTower(); // Scratch: predecessor at each level
+    private final int[] rank = new int[MAX_LEVEL];   // Scratch: position of each predecessor
+    private int level;     // Number of levels currently in use
+    private int size;      // Number of elements in the list
+    private int modCount;  // Number of structural changes, used by iterators to fail fast
+    private static final VocabMetrics.Histogram LOOKUPS = VocabMetrics.shared().lookups("skiplist"); // Nodes per lookup
+
+    /**
+     * Constructs an empty skip list.
+     */
+    public IndexableSkipList() {
+        clear();
+    }
+
+    /**
+     * Checks if the list is empty.
+     * @return true if the list is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of elements in the list.
+     * @return The size of the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an element to the beginning of the list.
+     * @param element The element to add.
+     */
+    public void addFirst(E element) {
+        insert(0, element);
+    }
+
+    /**
+     * Adds an element to the end of the list.
+     * @param element The element to add.
+     */
+    public void addLast(E element) {
+        insert(size, element);
+    }
+
+    /**
+     * Removes and returns the first element in the list.
+     * @return The first element in the list, or null if the list is empty.
+     */
+    public E removeFirst() {
+        return removeAt(0);
+    }
+
+    /**
+     * Removes and returns the last element in the list.
+     * @return The last element in the list, or null if the list is empty.
+     */
+    public E removeLast() {
+        return removeAt(size - 1);
+    }
+
+    /**
+     * Displays the topics stored in the list of type Vocab.
+     */
+    public void displayTopics() {
+        // Built first and printed in one write, since a catalog can have many thousand topics
+        StringBuilder text = new StringBuilder();
+        int index = 1;
+        for (SkipNode<E> current = head.next[0]; current != null; current = current.next[0]) {
+            text.append(index).append(": ").append(((Vocab) current.element).getTopic()).append(System.lineSeparator());
+            index++;
+        }
+        System.out.print(text);
+    }
+
+    /**
+     * Returns a page of consecutive elements: the first is found in O(log n) expected time,
+     * then the rest are read along the bottom level.
+     * @param from The position of the first element of the page.
+     * @param count The most elements on the page.
+     * @return The elements from the position on, at most count of them, or an empty list if
+     *         the position is out of bounds.
+     */
+    public List<E> page(int from, int count) {
+        ArrayList<E> page = new ArrayList<>();
+        if (from < 0 || from >= size || count <= 0) {
+            return page;
+        }
+        SkipNode<E> current = head;
+        int position = -1;
+        for (int i = level - 1; i >= 0; i--) {
+            while (current.next[i] != null && position + current.width[i] <= from) {
+                position += current.width[i];
+                current = current.next[i];
+            }
+        }
+        for (; current != null && page.size() < count; current = current.next[0]) {
+            page.add(current.element);
+        }
+        return page;
+    }
+
+    /**
+     * Removes all elements from the list.
+     */
+    public void clear() {
+        head.next[0] = null;
+        head.width[0] = 1; // The head sits at position -1, the end at position 0
+        level = 1;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Retrieves the Vocab object stored at the specified index in the list
+     * @param index The index of the element to retrieve.
+     * @return The Vocab object at the specified index, or null if the index is out of bounds
+     */
+    public Vocab getVocabByIndex(int index) {
+        if (index < 0 || index >= size) {
+            return null; // Index out of bounds
+        }
+        SkipNode<E> current = head;
+        int position = -1;
+        int steps = 0; // Nodes stepped through, for the metrics
+        for (int i = level - 1; i >= 0; i--) {
+            while (current.next[i] != null && position + current.width[i] <= index) {
+                position += current.width[i];
+                current = current.next[i];
+                steps++;
+            }
+        }
+        if (VocabMetrics.recording()) {
+            LOOKUPS.record(steps);
+        }
+        return (Vocab) current.element;
+    }
+
+    /**
+     * Inserts an element before the specified position in the list.
+     * @param position The index at which to insert the element.
+     * @param element The element to insert.
+     */
+    public void addBefore(int position, E element) {
+        insert(position, element);
+    }
+
+    /**
+     * Inserts an element after the specified position in the list.
+     * @param position The index after which to insert the element.
+     * @param element The element to insert.
+     */
+    public void addAfter(int position, E element) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + size);
+        }
+        insert(position + 1, element);
+    }
+
+    /**
+     * Removes the element at the specified position in the list.
+     * @param position The index of the element to remove.
+     * @return The removed element, or null if the index is out of bounds.
+     */
+    public E removeAt(int position) {
+        if (position < 0 || position >= size) {
+            return null; // Position out of bounds
+        }
+        findPredecessors(position);
+
+        SkipNode<E> target = update[0].next[0];
+        for (int i = 0; i < level; i++) {
+            if (i < target.next.length) {
+                update[i].next[i] = target.next[i];
+                update[i].width[i] += target.width[i] - 1;
+            } else {
+                update[i].width[i]--;
+            }
+            update[i] = null;
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--; // Drop levels that no longer hold any node
+        }
+        size--;
+        modCount++;
+        return target.element;
+    }
+
+    /**
+     * Returns an iterator over the elements in this list, from first to last.
+     * @return A fail-fast iterator over the list.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private SkipNode<E> next = head.next[0];
+            private final int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E element = next.element;
+                next = next.next[0];
+                return element;
+            }
+        };
+    }
+
+    /**
+     * Inserts an element so that it ends up at the given position.
+     * @param position The index the new element will have, from 0 to size.
+     * @param element The element to insert.
+     */
+    private void insert(int position, E element) {
+        if (position < 0 || position > size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + size);
+        }
+        SkipNode<E> newNode = new SkipNode<>(element, randomLevel());
+        while (level < newNode.next.length) {
+            // Open a new level: the head links straight to the end
+            head.next[level] = null;
+            head.width[level] = size + 1;
+            level++;
+        }
+        findPredecessors(position);
+
+        for (int i = 0; i < level; i++) {
+            if (i < newNode.next.length) {
+                // Split the link that spans the new position around the new node
+                int span = update[i].width[i] + 1;
+                newNode.next[i] = update[i].next[i];
+                update[i].next[i] = newNode;
+                update[i].width[i] = position - rank[i];
+                newNode.width[i] = span - update[i].width[i];
+            } else {
+                update[i].width[i]++;
+            }
+            update[i] = null;
+        }
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Records, at each level in use, the last node before the given position.
+     * @param position The position being inserted at or removed.
+     */
+    private void findPredecessors(int position) {
+        SkipNode<E> current = head;
+        int currentPosition = -1;
+        int steps = 0; // Nodes stepped through, for the metrics
+        for (int i = level - 1; i >= 0; i--) {
+            while (current.next[i] != null && currentPosition + current.width[i] < position) {
+                currentPosition += current.width[i];
+                current = current.next[i];
+                steps++;
+            }
+            update[i] = current;
+            rank[i] = currentPosition;
+        }
+        if (VocabMetrics.recording()) {
+            LOOKUPS.record(steps);
+        }
+    }
+
+    /**
+     * Allocates an empty array of forward links with one slot per possible level.
+     * @return A new array of MAX_LEVEL links.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> SkipNode<E>[] newTower() {
+        return (SkipNode<E>[]) new SkipNode[MAX_LEVEL];
+    }
+
+    /**
+     * Picks a tower height for a new node, each extra level with probability 1/2.
+     * @return A level between 1 and MAX_LEVEL.
+     */
+    private int randomLevel() {
+        int level = 1;
+        while (level < MAX_LEVEL && random.nextBoolean()) {
+            level++;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,152 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap storage for the words of one word store. Each word is written as its UTF-8 bytes,
+ * after an int length, into a direct ByteBuffer that the garbage collector never scans, and is
+ * named by its offset. The buffer doubles as it fills. Space given back by release is reclaimed
+ * by compact, which the store calls once most of the buffer is released, and the whole buffer
+ * is freed with the store, so reloading or editing a catalog never uses up direct memory.
+ * Not safe for use by several threads at once; the store guards it like its own arrays.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class OffHeapArena {
+    private static final int INITIAL_CAPACITY = 256;    // Bytes of the first buffer
+    private static final int COMPACT_THRESHOLD = 4096;  // Released bytes worth reclaiming
+
+    private ByteBuffer buffer;  // The records, or null until the first word is written
+    private int position;       // Next free offset in the buffer
+    private int released;       // Bytes of records no longer used
+
+    /**
+     * Writes a word into the arena.
+     * @param utf8 The UTF-8 bytes of the word.
+     * @return The offset of the new record.
+     */
+    public int put(byte[] utf8) {
+        int needed = 4 + utf8.length;
+        ensureCapacity(position + needed);
+        int offset = position;
+        buffer.putInt(offset, utf8.length);
+        buffer.put(offset + 4, utf8);
+        position += needed;
+        return offset;
+    }
+
+    /**
+     * Reads a word back from the arena.
+     * @param offset An offset returned by put.
+     * @return The word.
+     */
+    public String get(int offset) {
+        byte[] utf8 = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if a record holds the given bytes, without building a String.
+     * @param offset An offset returned by put.
+     * @param utf8 The UTF-8 bytes to compare with.
+     * @return true if the record holds exactly these bytes, false otherwise.
+     */
+    public boolean matches(int offset, byte[] utf8) {
+        if (buffer.getInt(offset) != utf8.length) {
+            return false;
+        }
+        return buffer.slice(offset + 4, utf8.length).equals(ByteBuffer.wrap(utf8));
+    }
+
+    /**
+     * Checks if a record holds the same bytes as a record of another arena.
+     * @param offset An offset returned by put.
+     * @param other The other arena, or this one.
+     * @param otherOffset An offset returned by the other arena's put.
+     * @return true if both records hold the same word, false otherwise.
+     */
+    public boolean sameWord(int offset, OffHeapArena other, int otherOffset) {
+        int length = buffer.getInt(offset);
+        if (other.buffer.getInt(otherOffset) != length) {
+            return false;
+        }
+        return buffer.slice(offset + 4, length).equals(other.buffer.slice(otherOffset + 4, length));
+    }
+
+    /**
+     * Marks a record as no longer used by its store.
+     * @param offset An offset returned by put.
+     */
+    public void release(int offset) {
+        released += 4 + buffer.getInt(offset);
+    }
+
+    /**
+     * Checks if released records take up enough of the arena to be worth compacting.
+     * @return true if they outnumber the live bytes and are not too few to matter.
+     */
+    public boolean needsCompaction() {
+        return released > COMPACT_THRESHOLD && released > position - released;
+    }
+
+    /**
+     * Copies the live records into a new buffer just large enough for them, dropping the
+     * released ones, and rewrites the offsets to point into it.
+     * @param offsets The offsets of every live record; updated in place.
+     * @param count The number of offsets in use.
+     */
+    public void compact(int[] offsets, int count) {
+        ByteBuffer old = buffer;
+        int live = position - released;
+        buffer = null;
+        position = 0;
+        released = 0;
+        ensureCapacity(live);
+        for (int i = 0; i < count; i++) {
+            int length = old.getInt(offsets[i]);
+            buffer.putInt(position, length);
+            buffer.put(position + 4, old, offsets[i] + 4, length);
+            offsets[i] = position;
+            position += 4 + length;
+        }
+    }
+
+    /**
+     * Describes the direct memory in use by every arena and any other direct buffer.
+     * @return A line such as "Off-heap words: 5 buffers, 1 MB reserved".
+     */
+    public static String report() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return String.format("Off-heap words: %d buffers, %d MB reserved",
+                        pool.getCount(), pool.getTotalCapacity() >> 20);
+            }
+        }
+        return "Off-heap words: direct memory use is not available";
+    }
+
+    /**
+     * Grows the buffer, by doubling, until it holds at least the given number of bytes.
+     * The old buffer's memory is freed once the collector finds it unreachable.
+     * @param capacity The number of bytes needed.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalStateException("Too many words for one off-heap store");
+        }
+        if (buffer != null && capacity <= buffer.capacity()) {
+            return;
+        }
+        int grown = buffer == null ? INITIAL_CAPACITY : buffer.capacity();
+        while (grown < capacity) {
+            grown = grown > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : grown * 2;
+        }
+        ByteBuffer bigger = ByteBuffer.allocateDirect(grown);
+        if (buffer != null) {
+            bigger.put(0, buffer, 0, position);
+        }
+        buffer = bigger;
+    }
+}
@@ -0,0 +1,402 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Word store that keeps the words of a topic off the heap, in an OffHeapArena of its own.
+ * The heap holds only int arrays per topic: the offset of each word, its String hash, and
+ * the chains and table of a hash index laid out as in Vocab.WordArray, so contains, remove
+ * and replace find a word by its hash and compare bytes only with candidates. However many
+ * words the catalog holds, the collector sees no objects for them, and the arena's memory
+ * is freed with the topic. Removed slots are marked and squeezed out once they outnumber
+ * the live ones.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class OffHeapWordStore implements WordStore {
+    private static final int REMOVED = -1; // Offset of a removed slot, and end of a chain
+
+    private final OffHeapArena arena = new OffHeapArena(); // Where the bytes of every word live
+    private int[] handles = new int[4];   // Arena offset of each slot's word, in list order
+    private int[] hashes = new int[4];    // hashCode of each slot's word, parallel to handles
+    private int[] nextSame = new int[4];  // Next live slot holding the same word, or -1
+    private int length;                   // Number of slots in use, removed ones included
+    private int size;                     // Number of live words
+    // Open-addressing table from each distinct word to its first live slot + 1 (0 marks a
+    // free bucket) and its last live slot; a bucket's word is the word of its first slot
+    private int[] firstSlot = new int[8];
+    private int[] lastSlot = new int[8];
+    private int distinct;                 // Number of words in the table
+
+    /**
+     * Adds a word to the end of the store.
+     * @param word The word to add.
+     */
+    public void addLast(String word) {
+        if (length == handles.length) {
+            handles = Arrays.copyOf(handles, length * 2);
+            hashes = Arrays.copyOf(hashes, length * 2);
+            nextSame = Arrays.copyOf(nextSame, length * 2);
+        }
+        handles[length] = arena.put(word.getBytes(StandardCharsets.UTF_8));
+        hashes[length] = word.hashCode();
+        link(length);
+        length++;
+        size++;
+    }
+
+    /**
+     * Adds words to the end of the store in one go, sizing the arrays for all of them first.
+     * @param dictionary The dictionary the ids come from.
+     * @param ids The dictionary id of each word, in order.
+     * @param count The number of ids to add.
+     */
+    @Override
+    public void addAll(WordDictionary dictionary, int[] ids, int count) {
+        if (length + count > handles.length) {
+            handles = Arrays.copyOf(handles, length + count);
+            hashes = Arrays.copyOf(hashes, length + count);
+            nextSame = Arrays.copyOf(nextSame, length + count);
+        }
+        for (int i = 0; i < count; i++) {
+            addLast(dictionary.wordOf(ids[i]));
+        }
+    }
+
+    /**
+     * Replaces the first copy of a word with a new word, keeping its position.
+     * @param oldWord the word to be replaced.
+     * @param newWord the new word to replace with.
+     * @return true if the word is replaced successfully, false otherwise.
+     */
+    public boolean replace(String oldWord, String newWord) {
+        int slot = unlink(oldWord);
+        if (slot < 0) {
+            return false;
+        }
+        arena.release(handles[slot]);
+        handles[slot] = arena.put(newWord.getBytes(StandardCharsets.UTF_8));
+        hashes[slot] = newWord.hashCode();
+        link(slot);
+        compactIfDue();
+        return true;
+    }
+
+    /**
+     * Removes the first copy of a word.
+     * @param word the word to remove.
+     * @return true if the word is removed successfully, false otherwise.
+     */
+    public boolean remove(String word) {
+        int slot = unlink(word);
+        if (slot < 0) {
+            return false;
+        }
+        arena.release(handles[slot]);
+        handles[slot] = REMOVED;
+        size--;
+        compactIfDue();
+        return true;
+    }
+
+    /**
+     * Checks if the store contains a specific word.
+     * @param word the word to check.
+     * @return true if the word is found, false otherwise
+     */
+    public boolean contains(String word) {
+        return position(word) >= 0;
+    }
+
+    /**
+     * Returns the number of words in the store.
+     * @return The number of words.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an iterator over the words in order, decoding each one as it is reached.
+     * The iterator does not support removal.
+     * @return An iterator over the words.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next = live(0); // Slot of the next word
+
+            @Override
+            public boolean hasNext() {
+                return next < length;
+            }
+
+            @Override
+            public String next() {
+                if (next >= length) {
+                    throw new NoSuchElementException();
+                }
+                String word = arena.get(handles[next]);
+                next = live(next + 1);
+                return word;
+            }
+        };
+    }
+
+    /**
+     * Performs the given action on each word in order.
+     * @param action The action to perform on each word.
+     */
+    @Override
+    public void forEach(Consumer<? super String> action) {
+        for (int i = 0; i < length; i++) {
+            if (handles[i] != REMOVED) {
+                action.accept(arena.get(handles[i]));
+            }
+        }
+    }
+
+    /**
+     * Checks if another store holds the same words in the same order, comparing hashes
+     * and bytes in place when the other store is also off the heap.
+     * @param store The store to compare with.
+     * @return true if both stores hold equal words in the same order, false otherwise.
+     */
+    @Override
+    public boolean sameWords(WordStore store) {
+        if (!(store instanceof OffHeapWordStore)) {
+            return WordStore.super.sameWords(store);
+        }
+        OffHeapWordStore other = (OffHeapWordStore) store;
+        if (size != other.size) {
+            return false;
+        }
+        int mine = live(0);
+        int theirs = other.live(0);
+        while (mine < length && theirs < other.length) {
+            if (hashes[mine] != other.hashes[theirs]
+                    || !arena.sameWord(handles[mine], other.arena, other.handles[theirs])) {
+                return false;
+            }
+            mine = live(mine + 1);
+            theirs = other.live(theirs + 1);
+        }
+        return mine >= length && theirs >= other.length;
+    }
+
+    /**
+     * Returns the words in order, in the same format as a list.
+     * @return A string such as [a, b, c].
+     */
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * Skips removed slots.
+     * @param slot The slot to start from.
+     * @return The first live slot at or after the given one, or length if there is none.
+     */
+    private int live(int slot) {
+        while (slot < length && handles[slot] == REMOVED) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Adds a slot to the chain of slots holding its word, keeping the chain in slot order.
+     * An appended slot always goes last, so it is linked in constant time; only a replaced
+     * slot, which keeps its place, may have to walk the chain.
+     * @param slot The slot to add.
+     */
+    private void link(int slot) {
+        int bucket = position(slot);
+        if (bucket < 0) {
+            nextSame[slot] = REMOVED;
+            insert(slot);
+            return;
+        }
+        int first = firstSlot[bucket] - 1;
+        int last = lastSlot[bucket];
+        if (slot > last) {
+            nextSame[slot] = REMOVED;
+            nextSame[last] = slot;
+            lastSlot[bucket] = slot;
+            return;
+        }
+        if (slot < first) {
+            nextSame[slot] = first;
+            firstSlot[bucket] = slot + 1;
+            return;
+        }
+        int current = first;
+        while (nextSame[current] >= 0 && nextSame[current] < slot) {
+            current = nextSame[current];
+        }
+        nextSame[slot] = nextSame[current];
+        nextSame[current] = slot;
+    }
+
+    /**
+     * Detaches the first slot holding a word from the chain of slots holding that word.
+     * @param word The word to look up.
+     * @return The detached slot, or -1 if the word is not in the store.
+     */
+    private int unlink(String word) {
+        int bucket = position(word);
+        if (bucket < 0) {
+            return -1;
+        }
+        int first = firstSlot[bucket] - 1;
+        if (nextSame[first] < 0) {
+            delete(bucket);
+        } else {
+            firstSlot[bucket] = nextSame[first] + 1;
+        }
+        nextSame[first] = REMOVED;
+        return first;
+    }
+
+    /**
+     * Squeezes removed slots out once they outnumber the live ones, and reclaims the arena
+     * space of removed and replaced words once it outweighs the live words.
+     */
+    private void compactIfDue() {
+        int removed = length - size;
+        boolean squeeze = removed > 16 && removed > size;
+        if (!squeeze && !arena.needsCompaction()) {
+            return;
+        }
+        int live = 0;
+        for (int i = 0; i < length; i++) {
+            if (handles[i] != REMOVED) {
+                handles[live] = handles[i];
+                hashes[live] = hashes[i];
+                live++;
+            }
+        }
+        length = live;
+        if (arena.needsCompaction()) {
+            arena.compact(handles, length);
+        }
+        Arrays.fill(firstSlot, 0);
+        distinct = 0;
+        for (int i = 0; i < length; i++) {
+            link(i); // Appending in slot order keeps every chain in order
+        }
+    }
+
+    /**
+     * Finds the bucket of a word in the table. The word is only encoded once some hash matches.
+     * @param word The word to look up.
+     * @return The bucket, or -1 if the word is not in the store.
+     */
+    private int position(String word) {
+        int hash = word.hashCode();
+        byte[] utf8 = null;
+        int mask = firstSlot.length - 1;
+        for (int i = mix(hash) & mask; firstSlot[i] != 0; i = (i + 1) & mask) {
+            int first = firstSlot[i] - 1;
+            if (hashes[first] == hash) {
+                if (utf8 == null) {
+                    utf8 = word.getBytes(StandardCharsets.UTF_8);
+                }
+                if (arena.matches(handles[first], utf8)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the bucket of the word held in a slot.
+     * @param slot The slot.
+     * @return The bucket, or -1 if no other live slot holds the word.
+     */
+    private int position(int slot) {
+        int hash = hashes[slot];
+        int mask = firstSlot.length - 1;
+        for (int i = mix(hash) & mask; firstSlot[i] != 0; i = (i + 1) & mask) {
+            int first = firstSlot[i] - 1;
+            if (hashes[first] == hash && arena.sameWord(handles[first], arena, handles[slot])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the word of a slot that is not in the table, with a chain of that one slot.
+     * @param slot The slot.
+     */
+    private void insert(int slot) {
+        if ((distinct + 1) * 2 > firstSlot.length) {
+            resize(firstSlot.length * 2);
+        }
+        int mask = firstSlot.length - 1;
+        int i = mix(hashes[slot]) & mask;
+        while (firstSlot[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        firstSlot[i] = slot + 1;
+        lastSlot[i] = slot;
+        distinct++;
+    }
+
+    /**
+     * Removes an entry from the table, shifting later entries of its run back.
+     * @param i The bucket of the entry.
+     */
+    private void delete(int i) {
+        int mask = firstSlot.length - 1;
+        firstSlot[i] = 0;
+        distinct--;
+        for (int j = (i + 1) & mask; firstSlot[j] != 0; j = (j + 1) & mask) {
+            int home = mix(hashes[firstSlot[j] - 1]) & mask;
+            // Move the entry back if its home bucket does not lie between the gap and it
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                firstSlot[i] = firstSlot[j];
+                lastSlot[i] = lastSlot[j];
+                firstSlot[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Rehashes the table into a new capacity.
+     * @param capacity The new number of buckets, a power of two.
+     */
+    private void resize(int capacity) {
+        int[] oldFirst = firstSlot;
+        int[] oldLast = lastSlot;
+        firstSlot = new int[capacity];
+        lastSlot = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldFirst.length; i++) {
+            if (oldFirst[i] != 0) {
+                int j = mix(hashes[oldFirst[i] - 1]) & mask;
+                while (firstSlot[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                firstSlot[j] = oldFirst[i];
+                lastSlot[j] = oldLast[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a String hash, which are weak in the low bits for short words.
+     * @param hash The hashCode of a word.
+     * @return The mixed hash.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
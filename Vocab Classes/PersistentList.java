@@ -0,0 +1,326 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Immutable list with structural sharing, for readers that must never see a list change.
+ * It is a treap ordered by position: every node has a random priority no lower than its
+ * children's and knows the size of its subtree, so lookups and edits take O(log n) expected.
+ * An edit copies only the nodes on the path it changes and returns a new list; the old list
+ * stays valid and shares every other node with the new one.
+ * @param <E> The type of the elements.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public final class PersistentList<E> implements Iterable<E> {
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null);
+
+    // Inner class Node is one immutable element of the tree
+    private static final class Node<E> {
+        final E element;     // The element at this node
+        final int priority;  // Random heap priority, at least that of both children
+        final int size;      // Number of nodes in this subtree
+        final Node<E> left;  // Elements before this one
+        final Node<E> right; // Elements after this one
+
+        /**
+         * Constructs a node.
+         * @param element The element.
+         * @param priority The heap priority.
+         * @param left The subtree of earlier elements, or null.
+         * @param right The subtree of later elements, or null.
+         */
+        Node(E element, int priority, Node<E> left, Node<E> right) {
+            this.element = element;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+
+        /**
+         * Copies this node with new children.
+         * @param left The new left subtree.
+         * @param right The new right subtree.
+         * @return The copy.
+         */
+        Node<E> with(Node<E> left, Node<E> right) {
+            return new Node<>(element, priority, left, right);
+        }
+    }
+
+    // Inner class Pending is a node on the right spine while a list is built, whose right
+    // subtree is not known until it is popped
+    private static final class Pending<E> {
+        final E element;    // The element
+        final int priority; // Its heap priority
+        final Node<E> left; // Its finished left subtree
+
+        /**
+         * Constructs a pending node.
+         * @param element The element.
+         * @param priority The heap priority.
+         * @param left The left subtree.
+         */
+        Pending(E element, int priority, Node<E> left) {
+            this.element = element;
+            this.priority = priority;
+            this.left = left;
+        }
+
+        /**
+         * Finishes the node.
+         * @param right Its right subtree.
+         * @return The node.
+         */
+        Node<E> close(Node<E> right) {
+            return new Node<>(element, priority, left, right);
+        }
+    }
+
+    private final Node<E> root; // Root of the tree, or null if the list is empty
+
+    /**
+     * Constructs a list over a tree.
+     * @param root The root of the tree.
+     */
+    private PersistentList(Node<E> root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the empty list.
+     * @param <E> The type of the elements.
+     * @return The empty list.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    /**
+     * Builds a list holding the given elements in order, in linear time.
+     * @param elements The elements.
+     * @param <E> The type of the elements.
+     * @return The list.
+     */
+    public static <E> PersistentList<E> of(Iterable<? extends E> elements) {
+        // Build the treap like a Cartesian tree: the rightmost path is kept on a stack, and
+        // each new element adopts the nodes of lower priority it pops as its left subtree.
+        // Nodes are immutable, so the spine is rebuilt bottom up once all elements are in.
+        ArrayDeque<Pending<E>> spine = new ArrayDeque<>();
+        for (E element : elements) {
+            int priority = ThreadLocalRandom.current().nextInt();
+            Node<E> left = null;
+            while (!spine.isEmpty() && spine.peek().priority < priority) {
+                left = spine.pop().close(left);
+            }
+            spine.push(new Pending<>(element, priority, left));
+        }
+        Node<E> right = null;
+        while (!spine.isEmpty()) {
+            right = spine.pop().close(right);
+        }
+        return new PersistentList<>(right);
+    }
+
+    /**
+     * Returns the number of elements.
+     * @return The size of the list.
+     */
+    public int size() {
+        return sizeOf(root);
+    }
+
+    /**
+     * Returns the element at a position.
+     * @param index The position.
+     * @return The element.
+     * @throws IndexOutOfBoundsException if the position is not in the list.
+     */
+    public E get(int index) {
+        checkIndex(index, size());
+        Node<E> node = root;
+        while (true) {
+            int leftSize = sizeOf(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.element;
+            }
+        }
+    }
+
+    /**
+     * Returns a list with an element inserted at a position.
+     * @param index The position, from 0 to the size.
+     * @param element The element to insert.
+     * @return The new list.
+     * @throws IndexOutOfBoundsException if the position is out of range.
+     */
+    public PersistentList<E> insert(int index, E element) {
+        checkIndex(index, size() + 1);
+        Node<E>[] parts = split(root, index);
+        Node<E> node = new Node<>(element, ThreadLocalRandom.current().nextInt(), null, null);
+        return new PersistentList<>(merge(merge(parts[0], node), parts[1]));
+    }
+
+    /**
+     * Returns a list without the element at a position.
+     * @param index The position.
+     * @return The new list.
+     * @throws IndexOutOfBoundsException if the position is not in the list.
+     */
+    public PersistentList<E> remove(int index) {
+        checkIndex(index, size());
+        return new PersistentList<>(remove(root, index));
+    }
+
+    /**
+     * Returns an iterator over the elements in order.
+     * @return An iterator that does not support removal.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final ArrayDeque<Node<E>> path = new ArrayDeque<>(); // Nodes whose element is next
+            {
+                descend(root);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> node = path.pop();
+                descend(node.right);
+                return node.element;
+            }
+
+            /**
+             * Pushes a node and its chain of left children.
+             * @param node The node to start from.
+             */
+            private void descend(Node<E> node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+        };
+    }
+
+    /**
+     * Performs an action on each element in order.
+     * @param action The action.
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        forEach(root, action);
+    }
+
+    /**
+     * Returns the size of a subtree.
+     * @param node The subtree, or null.
+     * @return The number of nodes in it.
+     */
+    private static int sizeOf(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Throws if an index is out of range.
+     * @param index The index.
+     * @param bound The exclusive upper bound.
+     */
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + bound);
+        }
+    }
+
+    /**
+     * Splits a subtree into its first count elements and the rest.
+     * @param node The subtree.
+     * @param count The number of elements in the first part.
+     * @param <E> The type of the elements.
+     * @return The two parts.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> Node<E>[] split(Node<E> node, int count) {
+        if (node == null) {
+            return (Node<E>[]) new Node[2];
+        }
+        int leftSize = sizeOf(node.left);
+        if (count <= leftSize) {
+            Node<E>[] parts = split(node.left, count);
+            parts[1] = node.with(parts[1], node.right);
+            return parts;
+        }
+        Node<E>[] parts = split(node.right, count - leftSize - 1);
+        parts[0] = node.with(node.left, parts[0]);
+        return parts;
+    }
+
+    /**
+     * Joins two subtrees, every element of the first coming before the second.
+     * @param first The first subtree.
+     * @param second The second subtree.
+     * @param <E> The type of the elements.
+     * @return The joined subtree.
+     */
+    private static <E> Node<E> merge(Node<E> first, Node<E> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority >= second.priority) {
+            return first.with(first.left, merge(first.right, second));
+        }
+        return second.with(merge(first, second.left), second.right);
+    }
+
+    /**
+     * Removes the element at a position of a subtree.
+     * @param node The subtree.
+     * @param index The position within the subtree.
+     * @param <E> The type of the elements.
+     * @return The subtree without the element.
+     */
+    private static <E> Node<E> remove(Node<E> node, int index) {
+        int leftSize = sizeOf(node.left);
+        if (index < leftSize) {
+            return node.with(remove(node.left, index), node.right);
+        }
+        if (index > leftSize) {
+            return node.with(node.left, remove(node.right, index - leftSize - 1));
+        }
+        return merge(node.left, node.right);
+    }
+
+    /**
+     * Performs an action on each element of a subtree in order.
+     * @param node The subtree.
+     * @param action The action.
+     * @param <E> The type of the elements.
+     */
+    private static <E> void forEach(Node<E> node, Consumer<? super E> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node.element);
+            node = node.right;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable sorted map with structural sharing, the keyed counterpart of PersistentList.
+ * It is a treap ordered by key whose priorities come from the keys' hash codes, so the
+ * same keys always give the same tree however they were added. An edit copies only the
+ * nodes on the path it changes and returns a new map; the old map stays valid.
+ * <p>
+ * A map may be given a weigher, which gives each value a weight; every node keeps the total
+ * weight of its subtree, as it keeps its size, so the weight of a key range is found in
+ * O(log n). Without a weigher every entry weighs 1.
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public final class PersistentMap<K extends Comparable<? super K>, V> {
+    private static final ToIntFunction<Object> UNIT = value -> 1; // Weigher of maps given none
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap<>(null, UNIT);
+
+    // Inner class Node is one immutable entry of the tree
+    private static final class Node<K, V> {
+        final K key;            // The key of this entry
+        final V value;          // The value of this entry
+        final int priority;     // Heap priority derived from the key, at least that of both children
+        final int size;         // Number of entries in this subtree
+        final int weight;       // Total weight of the entries in this subtree
+        final Node<K, V> left;  // Entries with smaller keys
+        final Node<K, V> right; // Entries with larger keys
+
+        /**
+         * Constructs a node.
+         * @param key The key.
+         * @param value The value.
+         * @param priority The heap priority.
+         * @param weight The weight of this entry alone.
+         * @param left The subtree of smaller keys, or null.
+         * @param right The subtree of larger keys, or null.
+         */
+        Node(K key, V value, int priority, int weight, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+            this.weight = weight + weightOf(left) + weightOf(right);
+        }
+
+        /**
+         * Copies this node with new children.
+         * @param left The new left subtree.
+         * @param right The new right subtree.
+         * @return The copy.
+         */
+        Node<K, V> with(Node<K, V> left, Node<K, V> right) {
+            int own = weight - weightOf(this.left) - weightOf(this.right);
+            return new Node<>(key, value, priority, own, left, right);
+        }
+    }
+
+    private final Node<K, V> root;                      // Root of the tree, or null if the map is empty
+    private final ToIntFunction<? super V> weigher;     // Weight of each value
+
+    /**
+     * Constructs a map over a tree.
+     * @param root The root of the tree.
+     * @param weigher The weight of each value.
+     */
+    private PersistentMap(Node<K, V> root, ToIntFunction<? super V> weigher) {
+        this.root = root;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the empty map.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns an empty map whose entries are weighed.
+     * @param weigher The weight of each value, never negative.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The empty map.
+     */
+    public static <K extends Comparable<? super K>, V> PersistentMap<K, V> empty(ToIntFunction<? super V> weigher) {
+        return new PersistentMap<>(null, weigher);
+    }
+
+    /**
+     * Builds a map from entries already in key order, in linear time.
+     * @param keys The keys, strictly ascending.
+     * @param values The value of each key.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The map.
+     */
+    public static <K extends Comparable<? super K>, V> PersistentMap<K, V> fromSorted(List<K> keys, List<V> values) {
+        return fromSorted(keys, values, UNIT);
+    }
+
+    /**
+     * Builds a map whose entries are weighed from entries already in key order, in linear time.
+     * @param keys The keys, strictly ascending.
+     * @param values The value of each key.
+     * @param weigher The weight of each value, never negative.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The map.
+     */
+    public static <K extends Comparable<? super K>, V> PersistentMap<K, V> fromSorted(List<K> keys, List<V> values,
+            ToIntFunction<? super V> weigher) {
+        // Same Cartesian tree build as PersistentList.of, except that each popped node is
+        // rebuilt with the right subtree it has so far and pushed back as a whole node
+        ArrayDeque<Node<K, V>> spine = new ArrayDeque<>();
+        for (int i = 0; i < keys.size(); i++) {
+            K key = keys.get(i);
+            int priority = priorityOf(key);
+            Node<K, V> left = null;
+            while (!spine.isEmpty() && spine.peek().priority < priority) {
+                Node<K, V> popped = spine.pop();
+                left = popped.with(popped.left, left);
+            }
+            V value = values.get(i);
+            spine.push(new Node<>(key, value, priority, weigher.applyAsInt(value), left, null));
+        }
+        Node<K, V> right = null;
+        while (!spine.isEmpty()) {
+            Node<K, V> popped = spine.pop();
+            right = popped.with(popped.left, right);
+        }
+        return new PersistentMap<>(right, weigher);
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return The size of the map.
+     */
+    public int size() {
+        return sizeOf(root);
+    }
+
+    /**
+     * Checks if the map has no entries.
+     * @return true if the map is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Returns the value of a key.
+     * @param key The key.
+     * @return The value, or null if the key is not in the map.
+     */
+    public V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.value;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the smallest key.
+     * @return The first key in key order, or null if the map is empty.
+     */
+    public K firstKey() {
+        Node<K, V> node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    /**
+     * Returns a map in which a key has the given value.
+     * @param key The key.
+     * @param value The value.
+     * @return The new map.
+     */
+    public PersistentMap<K, V> put(K key, V value) {
+        Node<K, V> entry = new Node<>(key, value, priorityOf(key), weigher.applyAsInt(value), null, null);
+        return new PersistentMap<>(put(root, entry), weigher);
+    }
+
+    /**
+     * Returns a map without a key.
+     * @param key The key.
+     * @return The new map, or this map if the key is not in it.
+     */
+    public PersistentMap<K, V> remove(K key) {
+        Node<K, V> removed = remove(root, key);
+        return removed == root ? this : new PersistentMap<>(removed, weigher);
+    }
+
+    /**
+     * Performs an action on each entry in key order.
+     * @param action The action, given each key and value.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    /**
+     * Returns an iterator over the values in key order.
+     * @return An iterator that does not support removal.
+     */
+    public Iterator<V> valueIterator() {
+        return valueIterator(null, null);
+    }
+
+    /**
+     * Returns an iterator over the values whose key is in a range, in key order. Only the
+     * nodes reached are visited, so stopping early costs O(log n) plus the values taken.
+     * @param from The smallest key in the range, or null to start at the first key.
+     * @param to The key just past the range, or null to run to the last key.
+     * @return An iterator that does not support removal.
+     */
+    public Iterator<V> valueIterator(K from, K to) {
+        return new Iterator<V>() {
+            private final ArrayDeque<Node<K, V>> path = new ArrayDeque<>(); // Nodes whose value is next
+            {
+                // Push the nodes from the root to the first key in the range
+                for (Node<K, V> node = root; node != null; ) {
+                    if (from != null && node.key.compareTo(from) < 0) {
+                        node = node.right;
+                    } else {
+                        path.push(node);
+                        node = node.left;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty() && (to == null || path.peek().key.compareTo(to) < 0);
+            }
+
+            @Override
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Node<K, V> node = path.pop();
+                descend(node.right);
+                return node.value;
+            }
+
+            /**
+             * Pushes a node and its chain of left children.
+             * @param node The node to start from.
+             */
+            private void descend(Node<K, V> node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the total weight of the entries whose key is in a range, in O(log n).
+     * @param from The smallest key in the range.
+     * @param to The key just past the range.
+     * @return The total weight, or 0 if the range is empty.
+     */
+    public long weightBetween(K from, K to) {
+        return from.compareTo(to) >= 0 ? 0 : weightBefore(to) - weightBefore(from);
+    }
+
+    /**
+     * Returns the total weight of the entries whose key is smaller than a key.
+     * @param key The key.
+     * @return The total weight.
+     */
+    private long weightBefore(K key) {
+        long total = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            if (node.key.compareTo(key) < 0) {
+                total += node.weight - weightOf(node.right); // The node and everything on its left
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the size of a subtree.
+     * @param node The subtree, or null.
+     * @return The number of entries in it.
+     */
+    private static int sizeOf(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Returns the total weight of a subtree.
+     * @param node The subtree, or null.
+     * @return The total weight of its entries.
+     */
+    private static int weightOf(Node<?, ?> node) {
+        return node == null ? 0 : node.weight;
+    }
+
+    /**
+     * Derives the heap priority of a key by spreading the bits of its hash code.
+     * @param key The key.
+     * @return The priority.
+     */
+    private static int priorityOf(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Puts an entry into a subtree, rotating it up while its priority is the higher.
+     * @param node The subtree.
+     * @param entry A childless node holding the key, value, priority and weight.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The new subtree.
+     */
+    private static <K extends Comparable<? super K>, V> Node<K, V> put(Node<K, V> node, Node<K, V> entry) {
+        if (node == null) {
+            return entry;
+        }
+        int cmp = entry.key.compareTo(node.key);
+        if (cmp == 0) {
+            return entry.with(node.left, node.right);
+        }
+        if (cmp < 0) {
+            Node<K, V> left = put(node.left, entry);
+            if (left.priority > node.priority) {
+                return left.with(left.left, node.with(left.right, node.right));
+            }
+            return node.with(left, node.right);
+        }
+        Node<K, V> right = put(node.right, entry);
+        if (right.priority > node.priority) {
+            return right.with(node.with(node.left, right.left), right.right);
+        }
+        return node.with(node.left, right);
+    }
+
+    /**
+     * Removes a key from a subtree.
+     * @param node The subtree.
+     * @param key The key.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The new subtree, or the same subtree if the key is not in it.
+     */
+    private static <K extends Comparable<? super K>, V> Node<K, V> remove(Node<K, V> node, K key) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            Node<K, V> left = remove(node.left, key);
+            return left == node.left ? node : node.with(left, node.right);
+        }
+        Node<K, V> right = remove(node.right, key);
+        return right == node.right ? node : node.with(node.left, right);
+    }
+
+    /**
+     * Joins two subtrees, every key of the first being smaller than those of the second.
+     * @param first The first subtree.
+     * @param second The second subtree.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The joined subtree.
+     */
+    private static <K, V> Node<K, V> merge(Node<K, V> first, Node<K, V> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority >= second.priority) {
+            return first.with(first.left, merge(first.right, second));
+        }
+        return second.with(merge(first, second.left), second.right);
+    }
+
+    /**
+     * Performs an action on each entry of a subtree in key order.
+     * @param node The subtree.
+     * @param action The action.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     */
+    private static <K, V> void forEach(Node<K, V> node, BiConsumer<? super K, ? super V> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+}
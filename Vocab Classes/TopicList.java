@@ -0,0 +1,94 @@
+import java.util.List;
+
+/**
+ * Positional list of topics used by the vocabulary menus.
+ * Positions are 0-based; the menus translate their 1-based choices before calling in.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ * @param <E> The type of elements stored in the list.
+ */
+public interface TopicList<E> extends Iterable<E> {
+
+    /**
+     * Checks if the list is empty.
+     * @return true if the list is empty, false otherwise.
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the number of elements in the list.
+     * @return The size of the list.
+     */
+    int size();
+
+    /**
+     * Adds an element to the beginning of the list.
+     * @param element The element to add.
+     */
+    void addFirst(E element);
+
+    /**
+     * Adds an element to the end of the list.
+     * @param element The element to add.
+     */
+    void addLast(E element);
+
+    /**
+     * Removes and returns the first element in the list.
+     * @return The first element in the list, or null if the list is empty.
+     */
+    E removeFirst();
+
+    /**
+     * Removes and returns the last element in the list.
+     * @return The last element in the list, or null if the list is empty.
+     */
+    E removeLast();
+
+    /**
+     * Displays the topics stored in the list of type Vocab.
+     */
+    void displayTopics();
+
+    /**
+     * Returns a page of consecutive elements, so a long list can be shown a screen at a time.
+     * @param from The position of the first element of the page.
+     * @param count The most elements on the page.
+     * @return The elements from the position on, at most count of them, or an empty list if
+     *         the position is out of bounds.
+     */
+    List<E> page(int from, int count);
+
+    /**
+     * Removes all elements from the list.
+     */
+    void clear();
+
+    /**
+     * Retrieves the Vocab object stored at the specified index in the list
+     * @param index The index of the element to retrieve.
+     * @return The Vocab object at the specified index, or null if the index is out of bounds
+     */
+    Vocab getVocabByIndex(int index);
+
+    /**
+     * Inserts an element before the specified position in the list.
+     * @param position The index at which to insert the element.
+     * @param element The element to insert.
+     */
+    void addBefore(int position, E element);
+
+    /**
+     * Inserts an element after the specified position in the list.
+     * @param position The index after which to insert the element.
+     * @param element The element to insert.
+     */
+    void addAfter(int position, E element);
+
+    /**
+     * Removes the element at the specified position in the list.
+     * @param position The index of the element to remove.
+     * @return The removed element, or null if the index is out of bounds.
+     */
+    E removeAt(int position);
+}
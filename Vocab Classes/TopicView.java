@@ -0,0 +1,20 @@
+/**
+ * Read-only view of one topic: its name and its words in order.
+ * Both live topics and the frozen topics of a catalog snapshot can be saved through it.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public interface TopicView extends Iterable<String> {
+
+    /**
+     * Gets the topic name.
+     * @return The topic name.
+     */
+    String getTopic();
+
+    /**
+     * Returns the number of words in the topic.
+     * @return The number of words.
+     */
+    int wordCount();
+}
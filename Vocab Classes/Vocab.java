@@ -1,6 +1,14 @@
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 
 /**
@@ -8,16 +16,42 @@ import java.util.Objects;
  * @author Mehdi Hanini
  * @version 4/15/2024
  */
-public class Vocab {
+public class Vocab implements TopicView {
     private String topic; // The topic of this Vocab
-    private SinglyLinkedList words; // The list of words associated with the topic
+    // Creates the word store of each new topic; singly linked lists unless changed
+    private static Supplier<WordStore> wordStoreFactory = SinglyLinkedList::new;
+
+    private WordStore words; // The list of words associated with the topic
+    private final Collection<String> wordsView = new WordsView(); // Read-only view of words
     
     /**
      * Constructor for Vocab
      * @param topic The topic of the vocabulary list.
      */    public Vocab(String topic) {
         this.topic = topic;
-        this.words = new SinglyLinkedList();
+        this.words = wordStoreFactory.get();
+    }
+
+    /**
+     * Constructor for Vocab that fills the new topic's store in one go, as the snapshot
+     * loader does: the store is sized for every word up front and given them by id.
+     * @param topic The topic of the vocabulary list.
+     * @param dictionary The dictionary the ids come from.
+     * @param ids The dictionary id of each word, in order.
+     * @param count The number of words.
+     */
+    public Vocab(String topic, WordDictionary dictionary, int[] ids, int count) {
+        this(topic);
+        words.addAll(dictionary, ids, count);
+    }
+
+    /**
+     * Chooses how topics created from now on store their words, such as
+     * SinglyLinkedList::new, WordArray::new or OffHeapWordStore::new. Existing topics keep their store.
+     * @param factory Creates an empty word store for each new topic.
+     */
+    public static void setWordStoreFactory(Supplier<WordStore> factory) {
+        wordStoreFactory = factory;
     }
 
    
@@ -44,7 +78,7 @@ public class Vocab {
      * @return true if the word is replaced successfully, false otherwise.
      */
     public boolean changeWord(String oldWord, String newWord) {
-        return words.replace(oldWord, newWord); // Method to be implemented in SinglyLinkedList
+        return words.replace(oldWord, newWord);
     }
     
     /**
@@ -58,10 +92,54 @@ public class Vocab {
 
     /**
      * Retrieves all words in this vocabulary list.
+     * Copies the words; read-only callers should use forEachWord, iterator or wordsView instead.
      * @return An ArrayList containing all words.
      */    public ArrayList<String> getWords() {
         return words.toList();
     }
+
+    /**
+     * Returns the number of words in this vocabulary list.
+     * @return The number of words.
+     */
+    public int wordCount() {
+        return words.size();
+    }
+
+    /**
+     * Performs the given action on each word in order, without copying the list.
+     * @param action The action to perform on each word.
+     */
+    public void forEachWord(Consumer<? super String> action) {
+        words.forEach(action);
+    }
+
+    /**
+     * Returns an iterator over the words in order. The iterator does not support removal.
+     * @return An iterator over the words.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return words.iterator();
+    }
+
+    /**
+     * Moves the words into a new store of the current kind, which joins the word dictionary
+     * shared now. The catalog uses it to let go of a dictionary full of words edited away.
+     */
+    public void renewWords() {
+        WordStore renewed = wordStoreFactory.get();
+        words.forEach(renewed::addLast);
+        words = renewed;
+    }
+
+    /**
+     * Returns a read-only view of the words that follows later changes to this list.
+     * @return A collection view of the words.
+     */
+    public Collection<String> wordsView() {
+        return wordsView;
+    }
     
      /**
       * Gets the topic of this vocabulary list.
@@ -74,20 +152,43 @@ public class Vocab {
        * Displays all words 
        */
     public void displayWords() {
-        ArrayList<String> wordList = words.toList(); 
-
-        if (wordList.isEmpty()) {
+        if (words.size() == 0) {
             System.out.println("No words found for this topic.");
             return;
-        }      
-        for (int i = 0; i < wordList.size(); i++) {
-            if (i > 0 && i % 4 == 0) { // After every 4 words, insert a newline
-                System.out.println();
+        }
+        // Format every word first and print them in one write, instead of one printf per word
+        StringBuilder text = new StringBuilder();
+        appendWords(text, words.iterator(), Integer.MAX_VALUE, 1);
+        System.out.print(text);
+    }
+
+    /**
+     * Appends words in the layout of displayWords: four to a line, each numbered and padded,
+     * with a line end after the last one. The menus use it to show a topic a page at a time.
+     * @param text The text to append to.
+     * @param cursor The words, read on from wherever it stands.
+     * @param count The most words to append.
+     * @param number The number shown for the first word, counting from 1.
+     * @return The number of words appended.
+     */
+    public static int appendWords(StringBuilder text, Iterator<String> cursor, int count, int number) {
+        int appended = 0;
+        while (appended < count && cursor.hasNext()) {
+            if (appended > 0 && (number - 1) % 4 == 0) { // After every 4 words, insert a newline
+                text.append(System.lineSeparator());
             }
-            // Print the index and word with tab spacing (formatting output of Topics and words
-            System.out.printf("%d: %-25s\t", (i + 1), wordList.get(i)); // Index is 1-based for display
-        }  
-        System.out.println();        
+            // The index and word with tab spacing, as printf("%d: %-25s\t") would give
+            String word = cursor.next();
+            text.append(number).append(": ").append(word);
+            for (int pad = word.length(); pad < 25; pad++) {
+                text.append(' ');
+            }
+            text.append('\t');
+            number++;
+            appended++;
+        }
+        text.append(System.lineSeparator());
+        return appended;
     }
     
     /**
@@ -116,38 +217,70 @@ public class Vocab {
     	            return false;
     	    } else if (!topic.equals(vocab.topic)) 
     	        return false;
-    	    return words.toList().equals(vocab.words.toList());
+    	    return words.sameWords(vocab.words);
     	}
 
+      // Read-only collection view over the words of this vocabulary list
+      private class WordsView extends AbstractCollection<String> {
+          @Override
+          public Iterator<String> iterator() {
+              return words.iterator();
+          }
+
+          @Override
+          public int size() {
+              return words.size();
+          }
+
+          @Override
+          public boolean contains(Object o) {
+              return o instanceof String && words.contains((String) o);
+          }
+      }
+
 
       /**
        * Singly linked list of Strings: words of this vocabulary list.
+       * Each node holds the shared copy of its word from the word dictionary.
        */
-      public class SinglyLinkedList {
+      public static class SinglyLinkedList implements WordStore {
     	  
-    	  //Inner class represents a node in the singly linked list
-          private class SNode {
-              String word; // The word contained within this node
-              SNode next;  // The next node in the list
+    	  //Nested class represents a node in the singly linked list
+          private static class SNode {
+              String word;     // The word contained within this node, or null once removed
+              SNode next;      // The next node in the list
+              SNode nextSame;  // The next live node holding the same word
+              SNode lastSame;  // Last node of the same-word chain, kept on its first node only
+              int seq;         // Append order, used to keep same-word chains in list order
 
               /**
                * Constructor for SNode.
                * @param word The word to store in the node.
+               * @param seq The append order of the node.
                */           
-              public SNode(String word) {
+              public SNode(String word, int seq) {
                   this.word = word;
                   this.next = null;
+                  this.seq = seq;
               }
           }  
           
         private SNode head; // Head node of the list
-        private int size;   // Number of nodes in the list
+        private SNode tail; // Tail node of the list, so appends do not walk the chain
+        private int size;   // Number of live words in the list
+        private int removed; // Number of removed nodes still linked in the chain
+        private int nextSeq; // Append order given to the next node
+        // First live node for each distinct word; removing or replacing a word
+        // only marks its node, so membership and edits never scan the chain
+        private HashMap<String, SNode> index = new HashMap<>();
+        private final WordDictionary dictionary = WordDictionary.shared(); // Holds the shared copy of each word
 
         /**
          * Constructor for SinglyLinkedList.
          */
         public SinglyLinkedList() {
             this.head = null;
+            this.tail = null;
             this.size = 0;
         }
 
@@ -157,17 +290,45 @@ public class Vocab {
          * @param word The word to add.
          */
         public void addLast(String word) {
-            SNode newNode = new SNode(word);
+            SNode newNode = new SNode(dictionary.intern(word), nextSeq++);
             if (head == null) {
                 head = newNode;
             } else {
-                SNode current = head;
-                while (current.next != null) {
-                    current = current.next;
-                }
-                current.next = newNode;
+                tail.next = newNode;
             }
+            tail = newNode;
             size++;
+            link(newNode);
+        }
+
+        /**
+         * Adds words to the end of the list in one go. Words from this list's own dictionary are
+         * already its shared copies, so they are linked without being interned again, and an
+         * empty list sizes its index for all of them first.
+         * @param dictionary The dictionary the ids come from.
+         * @param ids The dictionary id of each word, in order.
+         * @param count The number of ids to add.
+         */
+        @Override
+        public void addAll(WordDictionary dictionary, int[] ids, int count) {
+            if (dictionary != this.dictionary) {
+                WordStore.super.addAll(dictionary, ids, count);
+                return;
+            }
+            if (head == null) {
+                index = new HashMap<>(count * 4 / 3 + 1);
+            }
+            for (int i = 0; i < count; i++) {
+                SNode newNode = new SNode(dictionary.wordOf(ids[i]), nextSeq++);
+                if (head == null) {
+                    head = newNode;
+                } else {
+                    tail.next = newNode;
+                }
+                tail = newNode;
+                link(newNode);
+            }
+            size += count;
         }
         
         /**
@@ -177,15 +338,13 @@ public class Vocab {
          * @return true if the word is replaced successfully, false otherwise.
          */
         public boolean replace(String oldWord, String newWord) {
-            SNode current = head;
-            while (current != null) {
-                if (current.word.equals(oldWord)) {
-                    current.word = newWord;
-                    return true;
-                }
-                current = current.next;
+            SNode node = unlink(oldWord);
+            if (node == null) {
+                return false;
             }
-            return false;
+            node.word = dictionary.intern(newWord); // Only once the old word is found
+            link(node);
+            return true;
         }
         /**
          * Removes a word from the list
@@ -193,20 +352,17 @@ public class Vocab {
          * @return true if the word is removed successfully, false otherwise.
          */
         public boolean remove(String word) {
-            if (head == null) return false;
-            if (head.word.equals(word)) {
-                head = head.next;
-                return true;
+            SNode node = unlink(word);
+            if (node == null) {
+                return false;
             }
-            SNode current = head;
-            while (current.next != null) {
-                if (current.next.word.equals(word)) {
-                    current.next = current.next.next;
-                    return true;
-                }
-                current = current.next;
+            node.word = null; // Left in the chain until the next compaction
+            size--;
+            removed++;
+            if (removed > 16 && removed > size) {
+                compact();
             }
-            return false;
+            return true;
         }
         /**
          * Checks if the list contains a specific word.
@@ -215,14 +371,98 @@ public class Vocab {
          * @return true if the word is found, false otherwise
          */
         public boolean contains(String word) {
-            SNode current = head;
-            while (current != null) {
-                if (current.word.equals(word)) {
-                    return true;
+            return index.containsKey(word);
+        }
+
+        /**
+         * Returns the number of words in the list.
+         * @return The number of words.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over the words in order, skipping removed nodes.
+         * The iterator does not support removal.
+         * @return An iterator over the words.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private SNode next = live(head);
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
                 }
-                current = current.next;
+
+                @Override
+                public String next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    String word = next.word;
+                    next = live(next.next);
+                    return word;
+                }
+            };
+        }
+
+        /**
+         * Performs the given action on each word in order.
+         * @param action The action to perform on each word.
+         */
+        @Override
+        public void forEach(Consumer<? super String> action) {
+            for (SNode current = head; current != null; current = current.next) {
+                if (current.word != null) {
+                    action.accept(current.word);
+                }
+            }
+        }
+
+        /**
+         * Checks if another store holds the same words in the same order, walking both chains
+         * together when the other store is also a SinglyLinkedList.
+         * @param store The store to compare with.
+         * @return true if both stores hold equal words in the same order, false otherwise.
+         */
+        @Override
+        public boolean sameWords(WordStore store) {
+            if (!(store instanceof SinglyLinkedList)) {
+                return WordStore.super.sameWords(store);
+            }
+            SinglyLinkedList other = (SinglyLinkedList) store;
+            if (size != other.size) {
+                return false;
+            }
+            SNode mine = live(head);
+            SNode theirs = other.live(other.head);
+            while (mine != null && theirs != null) {
+                if (!mine.word.equals(theirs.word)) {
+                    return false;
+                }
+                mine = live(mine.next);
+                theirs = other.live(theirs.next);
+            }
+            return mine == null && theirs == null;
+        }
+
+        /**
+         * Returns the words in order, in the same format as a list.
+         * @return A string such as [a, b, c].
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("[");
+            for (SNode current = live(head); current != null; current = live(current.next)) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(current.word);
             }
-            return false;
+            return builder.append(']').toString();
         }
 
         /**
@@ -230,14 +470,481 @@ public class Vocab {
          * @return An ArrayList containing all words in the list.
          */       
         public ArrayList<String> toList() {
-            ArrayList<String> list = new ArrayList<>();
+            ArrayList<String> list = new ArrayList<>(size);
             SNode current = head;
             while (current != null) {
-                list.add(current.word);
+                if (current.word != null) {
+                    list.add(current.word);
+                }
                 current = current.next;
             }
             return list;
         }
+
+        /**
+         * Skips removed nodes.
+         * @param node The node to start from, or null.
+         * @return The first node at or after the given one that still holds a word, or null.
+         */
+        private SNode live(SNode node) {
+            while (node != null && node.word == null) {
+                node = node.next;
+            }
+            return node;
+        }
+
+        /**
+         * Adds a node to the chain of nodes holding its word, keeping the chain in list order.
+         * An appended node always goes last, so it is linked in constant time; only a replaced
+         * node, which keeps its place in the list, may have to walk the chain.
+         * @param node The node to add.
+         */
+        private void link(SNode node) {
+            SNode first = index.get(node.word);
+            if (first == null || first.seq > node.seq) {
+                node.nextSame = first;
+                node.lastSame = first == null ? node : first.lastSame;
+                index.put(node.word, node);
+                return;
+            }
+            if (first.lastSame.seq < node.seq) {
+                node.nextSame = null;
+                first.lastSame.nextSame = node;
+                first.lastSame = node;
+                return;
+            }
+            SNode current = first;
+            while (current.nextSame != null && current.nextSame.seq < node.seq) {
+                current = current.nextSame;
+            }
+            node.nextSame = current.nextSame;
+            current.nextSame = node;
+        }
+
+        /**
+         * Detaches the first node holding a word from the chain of nodes holding that word.
+         * @param word The word to look up.
+         * @return The detached node, or null if the word is not in the list.
+         */
+        private SNode unlink(String word) {
+            SNode first = index.get(word);
+            if (first == null) {
+                return null;
+            }
+            if (first.nextSame == null) {
+                index.remove(word);
+            } else {
+                first.nextSame.lastSame = first.lastSame;
+                index.put(word, first.nextSame);
+            }
+            first.nextSame = null;
+            first.lastSame = null;
+            return first;
+        }
+
+        /**
+         * Drops removed nodes from the chain once they outnumber the live ones.
+         */
+        private void compact() {
+            while (head != null && head.word == null) {
+                head = head.next;
+            }
+            tail = head;
+            if (head != null) {
+                for (SNode current = head.next; current != null; current = current.next) {
+                    if (current.word != null) {
+                        tail.next = current;
+                        tail = current;
+                    }
+                }
+                tail.next = null;
+            }
+            removed = 0;
+        }
              
-    }	
+    }
+
+      /**
+       * Compact word store: each word is an int id into the shared word dictionary, kept in a
+       * growable array in list order, so a word costs a few ints instead of a node and a String.
+       * A small open-addressing table maps each id to its first live slot, and slots holding the
+       * same word are chained in slot order, so contains, remove and replace do not scan.
+       * Removed slots are marked -1 and squeezed out once they outnumber the live ones.
+       */
+      public static class WordArray implements WordStore {
+        private static final int REMOVED = -1; // Id of a removed slot, and end of a chain
+
+        private int[] ids = new int[4];      // Word id of each slot, in list order
+        private int[] nextSame = new int[4]; // Next live slot holding the same word, or -1
+        private int length;                  // Number of slots in use, removed ones included
+        private int size;                    // Number of live words
+        // Open-addressing table from word id + 1 (0 marks a free bucket) to its first and last live slots
+        private int[] keys = new int[8];
+        private int[] firstSlot = new int[8];
+        private int[] lastSlot = new int[8];
+        private int distinct;                // Number of keys in the table
+        private final WordDictionary dictionary = WordDictionary.shared(); // Gives each word its id
+
+        /**
+         * Adds a word to the end of the store.
+         * @param word The word to add.
+         */
+        public void addLast(String word) {
+            if (length == ids.length) {
+                ids = Arrays.copyOf(ids, length * 2);
+                nextSame = Arrays.copyOf(nextSame, length * 2);
+            }
+            ids[length] = dictionary.idOf(word);
+            link(length);
+            length++;
+            size++;
+        }
+
+        /**
+         * Adds words to the end of the store in one go. Ids from this store's own dictionary are
+         * copied as they are, and the arrays and table are sized for all of them first.
+         * @param dictionary The dictionary the ids come from.
+         * @param ids The dictionary id of each word, in order.
+         * @param count The number of ids to add.
+         */
+        @Override
+        public void addAll(WordDictionary dictionary, int[] ids, int count) {
+            if (dictionary != this.dictionary) {
+                WordStore.super.addAll(dictionary, ids, count);
+                return;
+            }
+            if (length + count > this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, length + count);
+                nextSame = Arrays.copyOf(nextSame, length + count);
+            }
+            int capacity = keys.length;
+            while ((distinct + count) * 2 > capacity) {
+                capacity *= 2;
+            }
+            if (capacity > keys.length) {
+                resize(capacity);
+            }
+            for (int i = 0; i < count; i++) {
+                this.ids[length] = ids[i];
+                link(length);
+                length++;
+            }
+            size += count;
+        }
+
+        /**
+         * Replaces the first copy of a word with a new word, keeping its position.
+         * @param oldWord the word to be replaced.
+         * @param newWord the new word to replace with.
+         * @return true if the word is replaced successfully, false otherwise.
+         */
+        public boolean replace(String oldWord, String newWord) {
+            int slot = unlink(oldWord);
+            if (slot < 0) {
+                return false;
+            }
+            ids[slot] = dictionary.idOf(newWord);
+            link(slot);
+            return true;
+        }
+
+        /**
+         * Removes the first copy of a word.
+         * @param word the word to remove.
+         * @return true if the word is removed successfully, false otherwise.
+         */
+        public boolean remove(String word) {
+            int slot = unlink(word);
+            if (slot < 0) {
+                return false;
+            }
+            ids[slot] = REMOVED;
+            size--;
+            int removed = length - size;
+            if (removed > 16 && removed > size) {
+                compact();
+            }
+            return true;
+        }
+
+        /**
+         * Checks if the store contains a specific word.
+         * @param word the word to check.
+         * @return true if the word is found, false otherwise
+         */
+        public boolean contains(String word) {
+            int id = dictionary.find(word);
+            return id >= 0 && bucket(id) >= 0;
+        }
+
+        /**
+         * Returns the number of words in the store.
+         * @return The number of words.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over the words in order. The iterator does not support removal.
+         * @return An iterator over the words.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int next = live(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next < length;
+                }
+
+                @Override
+                public String next() {
+                    if (next >= length) {
+                        throw new NoSuchElementException();
+                    }
+                    String word = dictionary.wordOf(ids[next]);
+                    next = live(next + 1);
+                    return word;
+                }
+            };
+        }
+
+        /**
+         * Performs the given action on each word in order.
+         * @param action The action to perform on each word.
+         */
+        @Override
+        public void forEach(Consumer<? super String> action) {
+            for (int i = 0; i < length; i++) {
+                if (ids[i] != REMOVED) {
+                    action.accept(dictionary.wordOf(ids[i]));
+                }
+            }
+        }
+
+        /**
+         * Checks if another store holds the same words in the same order, comparing ids
+         * when the other store is a WordArray sharing the same dictionary.
+         * @param store The store to compare with.
+         * @return true if both stores hold equal words in the same order, false otherwise.
+         */
+        @Override
+        public boolean sameWords(WordStore store) {
+            if (!(store instanceof WordArray) || ((WordArray) store).dictionary != dictionary) {
+                return WordStore.super.sameWords(store);
+            }
+            WordArray other = (WordArray) store;
+            if (size != other.size) {
+                return false;
+            }
+            int mine = live(0);
+            int theirs = other.live(0);
+            while (mine < length && theirs < other.length) {
+                if (ids[mine] != other.ids[theirs]) { // Equal words always share an id
+                    return false;
+                }
+                mine = live(mine + 1);
+                theirs = other.live(theirs + 1);
+            }
+            return mine >= length && theirs >= other.length;
+        }
+
+        /**
+         * Returns the words in order, in the same format as a list.
+         * @return A string such as [a, b, c].
+         */
+        @Override
+        public String toString() {
+            return toList().toString();
+        }
+
+        /**
+         * Skips removed slots.
+         * @param slot The slot to start from.
+         * @return The first live slot at or after the given one, or length if there is none.
+         */
+        private int live(int slot) {
+            while (slot < length && ids[slot] == REMOVED) {
+                slot++;
+            }
+            return slot;
+        }
+
+        /**
+         * Adds a slot to the chain of slots holding its word, keeping the chain in slot order.
+         * An appended slot always goes last, so it is linked in constant time; only a replaced
+         * slot, which keeps its place, may have to walk the chain.
+         * @param slot The slot to add.
+         */
+        private void link(int slot) {
+            int id = ids[slot];
+            int bucket = position(id);
+            if (bucket < 0) {
+                nextSame[slot] = REMOVED;
+                insert(id, slot);
+                return;
+            }
+            int first = firstSlot[bucket];
+            int last = lastSlot[bucket];
+            if (slot > last) {
+                nextSame[slot] = REMOVED;
+                nextSame[last] = slot;
+                lastSlot[bucket] = slot;
+                return;
+            }
+            if (slot < first) {
+                nextSame[slot] = first;
+                firstSlot[bucket] = slot;
+                return;
+            }
+            int current = first;
+            while (nextSame[current] >= 0 && nextSame[current] < slot) {
+                current = nextSame[current];
+            }
+            nextSame[slot] = nextSame[current];
+            nextSame[current] = slot;
+        }
+
+        /**
+         * Detaches the first slot holding a word from the chain of slots holding that word.
+         * @param word The word to look up.
+         * @return The detached slot, or -1 if the word is not in the store.
+         */
+        private int unlink(String word) {
+            int id = dictionary.find(word);
+            int bucket = id < 0 ? -1 : position(id);
+            if (bucket < 0) {
+                return -1;
+            }
+            int first = firstSlot[bucket];
+            if (nextSame[first] < 0) {
+                delete(bucket);
+            } else {
+                firstSlot[bucket] = nextSame[first];
+            }
+            nextSame[first] = REMOVED;
+            return first;
+        }
+
+        /**
+         * Squeezes removed slots out of the arrays and rebuilds the chains and table.
+         */
+        private void compact() {
+            int live = 0;
+            for (int i = 0; i < length; i++) {
+                if (ids[i] != REMOVED) {
+                    ids[live++] = ids[i];
+                }
+            }
+            length = live;
+            Arrays.fill(keys, 0);
+            distinct = 0;
+            for (int i = 0; i < length; i++) {
+                link(i); // Appending in slot order keeps every chain in order
+            }
+        }
+
+        /**
+         * Finds the first live slot of a word id in the table.
+         * @param id The word id.
+         * @return The slot, or -1 if the id is not in the table.
+         */
+        private int bucket(int id) {
+            int i = position(id);
+            return i < 0 ? -1 : firstSlot[i];
+        }
+
+        /**
+         * Finds the bucket of a word id in the table.
+         * @param id The word id.
+         * @return The bucket, or -1 if the id is not in the table.
+         */
+        private int position(int id) {
+            int mask = keys.length - 1;
+            for (int i = mix(id) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == id + 1) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Adds a word id that is not in the table, with a chain of one slot.
+         * @param id The word id.
+         * @param slot The slot.
+         */
+        private void insert(int id, int slot) {
+            if ((distinct + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = mix(id) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = id + 1;
+            firstSlot[i] = slot;
+            lastSlot[i] = slot;
+            distinct++;
+        }
+
+        /**
+         * Removes an entry from the table, shifting later entries of its run back.
+         * @param i The bucket of the entry.
+         */
+        private void delete(int i) {
+            int mask = keys.length - 1;
+            keys[i] = 0;
+            distinct--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = mix(keys[j] - 1) & mask;
+                // Move the entry back if its home bucket does not lie between the gap and it
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    firstSlot[i] = firstSlot[j];
+                    lastSlot[i] = lastSlot[j];
+                    keys[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        /**
+         * Rehashes the table into a new capacity.
+         * @param capacity The new number of buckets, a power of two.
+         */
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldSlots = firstSlot;
+            int[] oldLast = lastSlot;
+            keys = new int[capacity];
+            firstSlot = new int[capacity];
+            lastSlot = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int j = mix(oldKeys[i] - 1) & mask;
+                    while (keys[j] != 0) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = oldKeys[i];
+                    firstSlot[j] = oldSlots[i];
+                    lastSlot[j] = oldLast[i];
+                }
+            }
+        }
+
+        /**
+         * Spreads the bits of a word id, since ids are handed out in sequence.
+         * @param id The word id.
+         * @return The hash of the id.
+         */
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+      }
 }
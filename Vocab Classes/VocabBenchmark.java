@@ -0,0 +1,465 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark suite for the catalog operations, runnable with plain javac and java:
+ * <pre>
+ *   java VocabBenchmark [--topics=N] [--words=N] [--duplicates=R] [--warmup=N] [--iterations=N] [--time=ms] [--only=text]
+ * </pre>
+ * Each benchmark runs a number of warmup iterations so the JIT settles, then measured
+ * iterations, and prints the mean time per operation with its standard deviation.
+ * An iteration repeats the benchmark's batch of operations for at least --time milliseconds,
+ * so quick operations are timed over many runs rather than one.
+ * The catalog is generated from a fixed seed with the given number of topics, words per
+ * topic and ratio of words that repeat a word already used elsewhere in the catalog.
+ * --only runs just the benchmarks whose name contains the text.
+ * <p>
+ * A first table gives the memory each word store keeps per word: the heap still in use
+ * after a full collection, Strings included wherever the store keeps them, and the direct
+ * memory outside the heap.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabBenchmark {
+    private static final long SEED = 42; // Seed of every generated catalog and query
+    private static volatile Object sink;  // Results are stored here so the JIT cannot drop the work
+
+    private int topicCount = 1000;       // Topics in the generated catalog
+    private int wordsPerTopic = 100;     // Words in each generated topic
+    private double duplicateRatio = 0.5; // Share of words that repeat an earlier word
+    private int warmup = 5;              // Unmeasured iterations of each benchmark
+    private int iterations = 10;         // Measured iterations of each benchmark
+    private long iterationNanos = 50_000_000; // Minimum duration of each iteration
+    private String only = "";            // Runs only benchmarks whose name contains this
+    private boolean memoryHeaderPrinted; // Whether the memory table has its header yet
+
+    // One benchmarked operation
+    private interface Operation {
+        /**
+         * Runs the operation once.
+         * @param i The number of the run within the iteration.
+         * @return A result to keep alive, or null.
+         * @throws Exception if the operation fails.
+         */
+        Object run(int i) throws Exception;
+    }
+
+    /**
+     * Runs the suite.
+     * @param args The options described in the class comment.
+     * @throws IOException if the generated files cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        VocabBenchmark benchmark = new VocabBenchmark();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--topics=")) {
+                benchmark.topicCount = Integer.parseInt(value);
+            } else if (arg.startsWith("--words=")) {
+                benchmark.wordsPerTopic = Integer.parseInt(value);
+            } else if (arg.startsWith("--duplicates=")) {
+                benchmark.duplicateRatio = Double.parseDouble(value);
+            } else if (arg.startsWith("--warmup=")) {
+                benchmark.warmup = Integer.parseInt(value);
+            } else if (arg.startsWith("--iterations=")) {
+                benchmark.iterations = Integer.parseInt(value);
+            } else if (arg.startsWith("--time=")) {
+                benchmark.iterationNanos = Long.parseLong(value) * 1_000_000;
+            } else if (arg.startsWith("--only=")) {
+                benchmark.only = value;
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        benchmark.runAll();
+    }
+
+    /**
+     * Generates a catalog. Words are random lower case strings, so prefix queries spread
+     * over the alphabet; each word repeats a word used earlier with the duplicate ratio.
+     * @param topics The number of topics.
+     * @param words The number of words per topic.
+     * @param duplicates The share of words that repeat an earlier word, from 0 to 1.
+     * @param seed The random seed.
+     * @return The topics in order.
+     */
+    public static List<Vocab> generateCatalog(int topics, int words, double duplicates, long seed) {
+        Random random = new Random(seed);
+        ArrayList<String> used = new ArrayList<>();
+        ArrayList<Vocab> catalog = new ArrayList<>(topics);
+        for (int t = 0; t < topics; t++) {
+            Vocab vocab = new Vocab("Topic " + t);
+            for (int w = 0; w < words; w++) {
+                String word;
+                if (!used.isEmpty() && random.nextDouble() < duplicates) {
+                    word = used.get(random.nextInt(used.size()));
+                } else {
+                    word = randomWord(random);
+                    used.add(word);
+                }
+                vocab.addWord(word);
+            }
+            catalog.add(vocab);
+        }
+        return catalog;
+    }
+
+    /**
+     * Runs every benchmark, for each kind of topic list and word store.
+     * @throws IOException if the generated files cannot be written or read.
+     */
+    private void runAll() throws IOException {
+        System.out.printf("Catalog: %d topics x %d words, %.0f%% duplicates; %d warmup + %d measured iterations%n",
+                topicCount, wordsPerTopic, duplicateRatio * 100, warmup, iterations);
+        // Memory goes first, before the timed benchmarks leave garbage for the collector to settle
+        measureMemory("linked", Vocab.SinglyLinkedList::new);
+        measureMemory("array", Vocab.WordArray::new);
+        measureMemory("offheap", OffHeapWordStore::new);
+        Vocab.setWordStoreFactory(Vocab.SinglyLinkedList::new);
+
+        System.out.printf("%n%-34s %14s %12s%n", "Benchmark", "ns/op", "+- ns/op");
+
+        File text = File.createTempFile("vocab-bench", ".txt");
+        File snapshot = File.createTempFile("vocab-bench", VocabWriter.SNAPSHOT_EXTENSION);
+        text.deleteOnExit();
+        snapshot.deleteOnExit();
+        List<Vocab> catalog = generateCatalog(topicCount, wordsPerTopic, duplicateRatio, SEED);
+        new VocabWriter().saveText(text, catalog);
+        new VocabWriter().saveSnapshot(snapshot, catalog);
+
+        runIoBenchmarks(catalog, text, snapshot);
+        runTopicListBenchmarks("linked", DoublyLinkedList::new, catalog);
+        runTopicListBenchmarks("skiplist", IndexableSkipList::new, catalog);
+        runIndexBenchmarks(catalog);
+        runCatalogBenchmarks(catalog);
+        runWordStoreBenchmarks("linked", Vocab.SinglyLinkedList::new);
+        runWordStoreBenchmarks("array", Vocab.WordArray::new);
+        runWordStoreBenchmarks("offheap", OffHeapWordStore::new);
+        Vocab.setWordStoreFactory(Vocab.SinglyLinkedList::new);
+    }
+
+    /**
+     * Benchmarks loading and saving the whole catalog, as the load and save menus do.
+     * @param catalog The catalog.
+     * @param text The catalog saved as text.
+     * @param snapshot The catalog saved as a snapshot.
+     * @throws IOException if a file cannot be written or read.
+     */
+    private void runIoBenchmarks(List<Vocab> catalog, File text, File snapshot) throws IOException {
+        measure("load text", 1, i -> load(text, "text"));
+        measure("load mapped", 1, i -> load(text, "mapped"));
+        measure("load parallel", 1, i -> load(text, "parallel"));
+        measure("load snapshot", 1, i -> load(snapshot, "snapshot"));
+        File out = File.createTempFile("vocab-bench-out", ".txt");
+        File outSnapshot = File.createTempFile("vocab-bench-out", VocabWriter.SNAPSHOT_EXTENSION);
+        measure("save text", 1, i -> {
+            new VocabWriter().saveText(out, catalog);
+            return out;
+        });
+        measure("save snapshot", 1, i -> {
+            new VocabWriter().saveSnapshot(outSnapshot, catalog);
+            return outSnapshot;
+        });
+        out.delete();
+        outSnapshot.delete();
+    }
+
+    /**
+     * Benchmarks positional access, insert and remove on one kind of topic list.
+     * @param name The name of the list kind.
+     * @param factory Creates an empty list.
+     * @param catalog The topics to fill the list with.
+     */
+    private void runTopicListBenchmarks(String name, Supplier<TopicList<Vocab>> factory, List<Vocab> catalog) {
+        TopicList<Vocab> topics = factory.get();
+        for (Vocab vocab : catalog) {
+            topics.addLast(vocab);
+        }
+        int[] positions = randomInts(1024, catalog.size());
+        Vocab extra = new Vocab("Extra");
+        measure(name + " getVocabByIndex", 1024, i -> topics.getVocabByIndex(positions[i]));
+        // Each lookup is next to the last one, as when stepping through the menus
+        measure(name + " getVocabByIndex nearby", 1024, i -> topics.getVocabByIndex((positions[0] + i) % catalog.size()));
+        // The same random lookups by walking from the first topic, as every lookup once did
+        measure(name + " walk from head", 1024, i -> walkFromHead(topics, positions[i]));
+        // Each insert is undone by a remove at the same place, so the size stays the same
+        measure(name + " insert+remove", 1024, i -> {
+            topics.addBefore(positions[i], extra);
+            return topics.removeAt(positions[i]);
+        });
+        measure(name + " iterate", 1, i -> {
+            int count = 0;
+            for (Vocab vocab : topics) {
+                count += vocab.wordCount();
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Benchmarks the word index queries behind the search and prefix menus.
+     * @param catalog The catalog to index.
+     */
+    private void runIndexBenchmarks(List<Vocab> catalog) {
+        WordIndex index = new WordIndex();
+        ArrayList<String> words = new ArrayList<>();
+        for (Vocab vocab : catalog) {
+            index.addTopic(vocab);
+            words.add(vocab.getWords().get(0));
+        }
+        int[] picks = randomInts(1024, words.size());
+        measure("index build", 1, i -> {
+            WordIndex built = new WordIndex();
+            for (Vocab vocab : catalog) {
+                built.addTopic(vocab);
+            }
+            return built;
+        });
+        measure("search word", 1024, i -> index.topicsContaining(words.get(picks[i])));
+        measure("prefix two letters", 26, i -> index.wordsStartingWith(String.valueOf((char) ('a' + i)) + 'e'));
+    }
+
+    /**
+     * Benchmarks the same queries and word edits through VocabCatalog, as the menus make them,
+     * so the cost of the service on top of the index can be read off against runIndexBenchmarks.
+     * @param catalog The topics to put in the catalog.
+     */
+    private void runCatalogBenchmarks(List<Vocab> catalog) {
+        TopicList<Vocab> topics = new DoublyLinkedList<>();
+        ArrayList<String> words = new ArrayList<>();
+        for (Vocab vocab : catalog) {
+            topics.addLast(vocab);
+            words.add(vocab.getWords().get(0));
+        }
+        VocabCatalog service = new VocabCatalog(topics);
+        int[] picks = randomInts(1024, words.size());
+        measure("catalog search word", 1024, i -> service.search(words.get(picks[i])));
+        // Each added word is removed again, so the topics stay as generated
+        measure("catalog add+remove word", 1024, i -> {
+            service.addWord(picks[i], "benchmark");
+            return service.removeWord(picks[i], "benchmark");
+        });
+    }
+
+    /**
+     * Benchmarks the word operations and equality of topics using one kind of word store.
+     * @param name The name of the store kind.
+     * @param factory Creates an empty store.
+     */
+    private void runWordStoreBenchmarks(String name, Supplier<WordStore> factory) {
+        Vocab.setWordStoreFactory(factory);
+        int size = Math.max(wordsPerTopic, 1);
+        List<Vocab> pair = generateCatalog(2, size, 0, SEED); // Two topics with distinct words
+        Vocab vocab = pair.get(0);
+        Vocab copy = new Vocab(vocab.getTopic());
+        vocab.forEachWord(copy::addWord);
+        ArrayList<String> words = vocab.getWords();
+        int[] picks = randomInts(1024, words.size());
+        // Equal topics compare every word; run first, while the copy is still in the same order
+        measure(name + " Vocab.equals", 1, i -> vocab.equals(copy) || vocab.equals(pair.get(1)));
+        measure(name + " words contains", 1024, i -> vocab.containsWord(words.get(picks[i])));
+        measure(name + " words scan", 1, i -> {
+            int[] letters = {0};
+            vocab.forEachWord(word -> letters[0] += word.length());
+            return letters[0];
+        });
+        // Each remove is undone by adding the word back at the end, so the size stays the same
+        measure(name + " words remove+add", 1024, i -> {
+            String word = words.get(picks[i]);
+            vocab.removeWord(word);
+            vocab.addWord(word);
+            return word;
+        });
+        measure(name + " build topic", 1, i -> {
+            Vocab built = new Vocab("Built");
+            for (String word : words) {
+                built.addWord(word);
+            }
+            return built;
+        });
+    }
+
+    /**
+     * Measures the memory one kind of word store keeps per word, for a catalog of the
+     * generated size filled with a new dictionary, and prints its line.
+     * @param name The name of the store kind.
+     * @param factory Creates an empty store.
+     */
+    private void measureMemory(String name, Supplier<WordStore> factory) {
+        String label = name + " bytes per word";
+        if (!label.contains(only)) {
+            return;
+        }
+        if (!memoryHeaderPrinted) {
+            System.out.printf("%-34s %14s %12s%n", "Memory", "heap B/word", "direct B/word");
+            memoryHeaderPrinted = true;
+        }
+        Vocab.setWordStoreFactory(factory);
+        WordDictionary previous = WordDictionary.shared();
+        WordDictionary.setShared(new WordDictionary());
+        long[] before = usedMemory();
+        List<Vocab> catalog = generateCatalog(topicCount, wordsPerTopic, duplicateRatio, SEED);
+        long[] after = usedMemory();
+        double words = Math.max((double) topicCount * wordsPerTopic, 1);
+        System.out.printf("%-34s %14.1f %12.1f%n", label,
+                (after[0] - before[0]) / words, (after[1] - before[1]) / words);
+        sink = catalog;
+        sink = null;
+        WordDictionary.setShared(previous);
+    }
+
+    /**
+     * Returns the heap and direct memory in use once garbage has been collected. Some garbage,
+     * such as direct buffers freed by a cleaner thread, only goes a few collections later, so
+     * this collects until neither figure has shrunk for several collections in a row.
+     * @return The bytes of heap and of direct memory in use.
+     */
+    private static long[] usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long[] used = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0, steady = 0; round < 30 && steady < 4; round++, steady++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            long direct = usedDirect();
+            if (heap < used[0] || direct < used[1]) {
+                steady = -1; // Something was freed, so collect again
+            }
+            used[0] = Math.min(heap, used[0]);
+            used[1] = Math.min(direct, used[1]);
+        }
+        return used;
+    }
+
+    /**
+     * Returns the direct memory in use by ByteBuffers.
+     * @return The bytes in use, or 0 if the JVM does not report them.
+     */
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds a topic by walking the list from its first topic.
+     * @param topics The topics.
+     * @param position The index of the topic.
+     * @return The topic.
+     */
+    private static Vocab walkFromHead(TopicList<Vocab> topics, int position) {
+        Iterator<Vocab> cursor = topics.iterator();
+        for (int i = 0; i < position; i++) {
+            cursor.next();
+        }
+        return cursor.next();
+    }
+
+    /**
+     * Loads a file the way the load menu does.
+     * @param file The file.
+     * @param mode text, mapped, parallel or snapshot.
+     * @return The loaded topics.
+     * @throws IOException if the file cannot be read.
+     */
+    private static TopicList<Vocab> load(File file, String mode) throws IOException {
+        TopicList<Vocab> topics = new DoublyLinkedList<>();
+        VocabLoader loader = new VocabLoader();
+        if (mode.equals("snapshot")) {
+            loader.loadSnapshot(file, topics);
+        } else if (mode.equals("parallel")) {
+            loader.loadParallel(file, topics);
+        } else if (mode.equals("mapped")) {
+            loader.loadMapped(file, topics);
+        } else {
+            loader.loadText(file, topics);
+        }
+        return topics;
+    }
+
+    /**
+     * Measures one benchmark and prints its line.
+     * @param name The name of the benchmark.
+     * @param operations The number of operations in each iteration.
+     * @param operation The operation, given its number within the iteration.
+     */
+    private void measure(String name, int operations, Operation operation) {
+        if (!name.contains(only)) {
+            return;
+        }
+        double[] nanosPerOp = new double[iterations];
+        try {
+            for (int round = -warmup; round < iterations; round++) {
+                long start = System.nanoTime();
+                long elapsed;
+                long runs = 0;
+                do {
+                    for (int i = 0; i < operations; i++) {
+                        sink = operation.run(i);
+                    }
+                    runs += operations;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < iterationNanos);
+                if (round >= 0) {
+                    nanosPerOp[round] = elapsed / (double) runs;
+                }
+            }
+        } catch (Exception e) {
+            System.out.printf("%-34s failed: %s%n", name, e);
+            return;
+        }
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value / iterations;
+        }
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean) / Math.max(iterations - 1, 1);
+        }
+        System.out.printf("%-34s %14.1f %12.1f%n", name, mean, Math.sqrt(variance));
+    }
+
+    /**
+     * Draws random positions.
+     * @param count The number of positions.
+     * @param bound The exclusive upper bound of each position.
+     * @return The positions.
+     */
+    private static int[] randomInts(int count, int bound) {
+        Random random = new Random(SEED);
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextInt(bound);
+        }
+        return values;
+    }
+
+    /**
+     * Makes a random lower case word of 3 to 10 letters.
+     * @param random The random source.
+     * @return The word.
+     */
+    private static String randomWord(Random random) {
+        char[] letters = new char[3 + random.nextInt(8)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+}
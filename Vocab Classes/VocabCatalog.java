@@ -0,0 +1,388 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The vocabulary catalog without a console: the topics, their word index, loading, saving
+ * and the journal. Every method returns its result instead of printing it, so the menus,
+ * the batch mode and any program that embeds the catalog all drive the same engine.
+ * Topics are numbered from 0 here; the menus add 1 when they show them.
+ * <p>
+ * A catalog is meant for one thread at a time. ConcurrentCatalog is the one to share.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabCatalog {
+    private TopicList<Vocab> topics;       // The topics, in catalog order
+    private WordIndex wordIndex;           // Index from each word to the topics containing it
+    private String loaderMode = "text";    // How text files are loaded: text, mapped or parallel
+    private VocabJournal journal = null;   // Journal of every edit, or null if journaling is off
+
+    /**
+     * Constructs an empty catalog kept in a doubly linked list.
+     */
+    public VocabCatalog() {
+        this(new DoublyLinkedList<>());
+    }
+
+    /**
+     * Constructs a catalog over a topic list, indexing the topics it already has.
+     * Later loads keep the topics in a list of the same kind.
+     * @param topics The topic list.
+     */
+    public VocabCatalog(TopicList<Vocab> topics) {
+        useTopics(topics);
+    }
+
+    /**
+     * Chooses how text files are loaded. Files ending in .vsnap are always read as snapshots.
+     * @param mode "text" reads through a buffer, "mapped" memory-maps the file, and
+     *             "parallel" memory-maps it and parses topics on several threads.
+     * @throws IllegalArgumentException if the mode is none of these.
+     */
+    public void setLoaderMode(String mode) {
+        if (!mode.equals("text") && !mode.equals("mapped") && !mode.equals("parallel")) {
+            throw new IllegalArgumentException("Unknown loader mode: " + mode);
+        }
+        loaderMode = mode;
+    }
+
+    /**
+     * Replaces the catalog with the one saved in a journal and journals every later edit to it.
+     * @param journal The journal to recover from.
+     * @return The number of journal records replayed on top of its snapshot.
+     * @throws IOException if the journal cannot be read; the catalog and journaling are then unchanged.
+     */
+    public int recover(VocabJournal journal) throws IOException {
+        TopicList<Vocab> recovered = newTopicList();
+        WordDictionary previous = WordDictionary.shared();
+        WordDictionary.setShared(new WordDictionary());
+        int replayed;
+        try {
+            replayed = journal.recover(recovered);
+        } catch (IOException | RuntimeException e) {
+            WordDictionary.setShared(previous);
+            throw e;
+        }
+        useTopics(recovered);
+        this.journal = journal;
+        return replayed;
+    }
+
+    /**
+     * Returns the number of topics.
+     * @return The size of the catalog.
+     */
+    public int size() {
+        return topics.size();
+    }
+
+    /**
+     * Returns the topic at a position.
+     * @param index The 0-based position.
+     * @return The topic, or null if there is no topic at the position.
+     */
+    public Vocab topicAt(int index) {
+        return topics.getVocabByIndex(index);
+    }
+
+    /**
+     * Returns the names of all topics in catalog order.
+     * @return A new list of the names.
+     */
+    public List<String> topicNames() {
+        List<String> names = new ArrayList<>(topics.size());
+        for (Vocab topic : topics) {
+            names.add(topic.getTopic());
+        }
+        return names;
+    }
+
+    /**
+     * Returns the names of a page of topics. Fetching the pages in turn costs only their
+     * length, since the topic list starts each one from where the last ended.
+     * @param from The 0-based position of the first topic of the page.
+     * @param count The most topics on the page.
+     * @return A new list of the names, empty if the position is past the last topic.
+     */
+    public List<String> topicNames(int from, int count) {
+        List<String> names = new ArrayList<>();
+        for (Vocab topic : topics.page(from, count)) {
+            names.add(topic.getTopic());
+        }
+        return names;
+    }
+
+    /**
+     * Finds the topics containing a word.
+     * @param word The word to look for; surrounding whitespace is ignored.
+     * @return A read-only list of the topics containing it, empty if there are none.
+     */
+    public List<Vocab> search(String word) {
+        long start = VocabMetrics.start();
+        List<Vocab> found = wordIndex.topicsContaining(word);
+        VocabMetrics.stop("search", start);
+        return found;
+    }
+
+    /**
+     * Finds the words of every topic that start with a prefix, ignoring case.
+     * @param prefix The prefix.
+     * @return The matching words sorted case-insensitively, one entry per copy in the catalog.
+     */
+    public List<String> wordsStartingWith(String prefix) {
+        long start = VocabMetrics.start();
+        List<String> words = wordIndex.wordsStartingWith(prefix);
+        VocabMetrics.stop("prefix", start);
+        return words;
+    }
+
+    /**
+     * Inserts a topic at a position and indexes its words.
+     * @param index The 0-based position the topic will have, from 0 to the number of topics.
+     * @param topic The new topic.
+     * @throws IndexOutOfBoundsException if the position is out of range.
+     * @throws UncheckedIOException if the journal could not record the topic; it is then not inserted.
+     */
+    public void insertTopic(int index, Vocab topic) {
+        long start = VocabMetrics.start();
+        if (index < 0 || index > topics.size()) {
+            throw new IndexOutOfBoundsException("Position " + index + " of " + topics.size());
+        }
+        journal(j -> j.insertTopic(index, topic));
+        topics.addBefore(index, topic);
+        wordIndex.addTopic(topic);
+        compactJournalIfDue();
+        renewDictionaryIfStale();
+        VocabMetrics.stop("insertTopic", start);
+    }
+
+    /**
+     * Removes the topic at a position and drops its words from the index.
+     * @param index The 0-based position of the topic.
+     * @return The removed topic, or null if there is no topic at the position.
+     * @throws UncheckedIOException if the journal could not record the removal; the topic is then kept.
+     */
+    public Vocab removeTopic(int index) {
+        long start = VocabMetrics.start();
+        Vocab removed = null;
+        if (index >= 0 && index < topics.size()) {
+            journal(j -> j.removeTopic(index));
+            removed = topics.removeAt(index);
+            wordIndex.removeTopic(removed);
+            compactJournalIfDue();
+            renewDictionaryIfStale();
+        }
+        VocabMetrics.stop("removeTopic", start);
+        return removed;
+    }
+
+    /**
+     * Adds a word to the topic at a position.
+     * @param index The 0-based position of the topic.
+     * @param word The word to add.
+     * @throws IndexOutOfBoundsException if there is no topic at the position.
+     * @throws UncheckedIOException if the journal could not record the word; it is then not added.
+     */
+    public void addWord(int index, String word) {
+        long start = VocabMetrics.start();
+        Vocab topic = topic(index);
+        journal(j -> j.addWord(index, word));
+        wordIndex.addWord(topic, word);
+        compactJournalIfDue();
+        renewDictionaryIfStale();
+        VocabMetrics.stop("addWord", start);
+    }
+
+    /**
+     * Removes a word from the topic at a position.
+     * @param index The 0-based position of the topic.
+     * @param word The word to remove.
+     * @return true if the topic had the word, false otherwise.
+     * @throws IndexOutOfBoundsException if there is no topic at the position.
+     * @throws UncheckedIOException if the journal could not record the removal; the word is then kept.
+     */
+    public boolean removeWord(int index, String word) {
+        long start = VocabMetrics.start();
+        Vocab topic = topic(index);
+        boolean removed = topic.containsWord(word);
+        if (removed) {
+            journal(j -> j.removeWord(index, word));
+            wordIndex.removeWord(topic, word);
+            compactJournalIfDue();
+            renewDictionaryIfStale();
+        }
+        VocabMetrics.stop("removeWord", start);
+        return removed;
+    }
+
+    /**
+     * Changes a word of the topic at a position.
+     * @param index The 0-based position of the topic.
+     * @param oldWord The word to change.
+     * @param newWord The word to change it to.
+     * @return true if the topic had the old word, false otherwise.
+     * @throws IndexOutOfBoundsException if there is no topic at the position.
+     * @throws UncheckedIOException if the journal could not record the change; the word is then kept.
+     */
+    public boolean changeWord(int index, String oldWord, String newWord) {
+        long start = VocabMetrics.start();
+        Vocab topic = topic(index);
+        boolean changed = topic.containsWord(oldWord);
+        if (changed) {
+            journal(j -> j.changeWord(index, oldWord, newWord));
+            wordIndex.changeWord(topic, oldWord, newWord);
+            compactJournalIfDue();
+            renewDictionaryIfStale();
+        }
+        VocabMetrics.stop("changeWord", start);
+        return changed;
+    }
+
+    /**
+     * Replaces the catalog with the topics in a file.
+     * Files ending in .vsnap are read as binary snapshots, others as text.
+     * The new topics share a new word dictionary, so the words of the old catalog are
+     * freed along with it.
+     * @param file The file to load.
+     * @return The loader, which can report how much it read and how fast.
+     * @throws IOException if the file cannot be read; the catalog is then unchanged.
+     * @throws UncheckedIOException if the catalog was loaded but the journal could not be rewritten for it.
+     */
+    public VocabLoader load(File file) throws IOException {
+        long start = VocabMetrics.start();
+        // Build the new catalog off to the side so a failed load keeps the current one
+        TopicList<Vocab> loaded = newTopicList();
+        VocabLoader loader = new VocabLoader();
+        WordDictionary previous = WordDictionary.shared();
+        WordDictionary.setShared(new WordDictionary());
+        try {
+            if (file.getName().endsWith(VocabWriter.SNAPSHOT_EXTENSION)) {
+                loader.loadSnapshot(file, loaded);
+            } else if (loaderMode.equals("parallel")) {
+                loader.loadParallel(file, loaded);
+            } else if (loaderMode.equals("mapped")) {
+                loader.loadMapped(file, loaded);
+            } else {
+                loader.loadText(file, loaded);
+            }
+        } catch (IOException | RuntimeException e) {
+            WordDictionary.setShared(previous); // Later topics keep sharing words with the current catalog
+            throw e;
+        }
+        useTopics(loaded);
+        VocabMetrics.stop("load", start);
+        journal(j -> j.compact(topics)); // The journal cannot express a whole new catalog
+        return loader;
+    }
+
+    /**
+     * Saves the catalog to a file.
+     * Files ending in .vsnap are written as binary snapshots, others as text.
+     * @param file The file to save to.
+     * @return The writer, which can report how much it wrote and how fast.
+     * @throws IOException if the file cannot be written.
+     */
+    public VocabWriter save(File file) throws IOException {
+        long start = VocabMetrics.start();
+        VocabWriter writer = new VocabWriter();
+        if (file.getName().endsWith(VocabWriter.SNAPSHOT_EXTENSION)) {
+            writer.saveSnapshot(file, topics);
+        } else {
+            writer.saveText(file, topics);
+        }
+        VocabMetrics.stop("save", start);
+        return writer;
+    }
+
+    /**
+     * Returns the topic at a position, which must exist.
+     * @param index The 0-based position.
+     * @return The topic.
+     * @throws IndexOutOfBoundsException if there is no topic at the position.
+     */
+    private Vocab topic(int index) {
+        Vocab topic = topics.getVocabByIndex(index);
+        if (topic == null) {
+            throw new IndexOutOfBoundsException("Position " + index + " of " + topics.size());
+        }
+        return topic;
+    }
+
+    /**
+     * Makes a topic list the catalog and rebuilds the word index for it.
+     * @param topics The new catalog.
+     */
+    private void useTopics(TopicList<Vocab> topics) {
+        WordIndex index = new WordIndex();
+        for (Vocab vocab : topics) {
+            index.addTopic(vocab);
+        }
+        this.topics = topics;
+        this.wordIndex = index;
+    }
+
+    /**
+     * Moves every topic to a new word dictionary once the shared one is stale.
+     */
+    private void renewDictionaryIfStale() {
+        if (!WordDictionary.shared().isStale(wordIndex.distinctWords())) {
+            return;
+        }
+        WordDictionary.setShared(new WordDictionary());
+        for (Vocab topic : topics) {
+            topic.renewWords();
+        }
+    }
+
+    /**
+     * Creates an empty topic list of the same kind as the current one.
+     * @return A new, empty topic list.
+     */
+    private TopicList<Vocab> newTopicList() {
+        if (topics instanceof IndexableSkipList) {
+            return new IndexableSkipList<>();
+        }
+        return new DoublyLinkedList<>();
+    }
+
+    // A journal write for one edit
+    private interface JournalEntry {
+        void write(VocabJournal journal) throws IOException;
+    }
+
+    /**
+     * Writes one edit to the journal, if journaling is on. Edits call it before they change
+     * anything, so an edit the journal cannot record is not made at all.
+     * @param entry The journal write for the edit.
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    private void journal(JournalEntry entry) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            entry.write(journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compacts the journal when it is due, once an edit it recorded has been made.
+     * @throws UncheckedIOException if the snapshot or the new journal could not be written;
+     *         the edit is still recorded in the old journal.
+     */
+    private void compactJournalIfDue() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.compactIfDue(topics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
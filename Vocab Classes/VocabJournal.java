@@ -0,0 +1,409 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of catalog edits on top of a binary snapshot.
+ * Each edit appends one small checksummed record to base.journal, so saving an edit costs
+ * the size of the edit rather than the size of the catalog. Once enough records pile up the
+ * catalog is compacted into base.vsnap and the journal starts over.
+ * <p>
+ * The journal header names the snapshot it applies to by size and CRC-32, so a crash between
+ * writing a new snapshot and resetting the journal cannot replay edits twice. Each record is
+ * written before its edit is made in memory. Records are handed to the operating system as they
+ * are written, or forced to disk first when the journal is opened with sync; the snapshot is
+ * forced to disk on compaction.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabJournal {
+    private static final int JOURNAL_MAGIC = 0x564F434A; // "VOCJ"
+    private static final int JOURNAL_VERSION = 1;
+    private static final int HEADER_SIZE = 20;           // Magic, version, snapshot size and CRC
+    private static final int COMPACT_RECORDS = 10_000;   // Records after which the journal is compacted
+    private static final long COMPACT_BYTES = 64L << 20; // Journal size after which it is compacted
+
+    // Record types
+    private static final byte ADD_WORD = 1;
+    private static final byte REMOVE_WORD = 2;
+    private static final byte CHANGE_WORD = 3;
+    private static final byte INSERT_TOPIC = 4;
+    private static final byte REMOVE_TOPIC = 5;
+
+    private final File snapshotFile; // Catalog as of the last compaction
+    private final File journalFile;  // Edits made since the last compaction
+    private final boolean sync;      // Whether each record is forced to disk before its edit is made
+    private FileOutputStream out;    // Appends to the journal, or null until recover or compact
+    private long journalBytes;       // Current size of the journal
+    private int records;             // Records written since the last compaction
+
+    /**
+     * Constructs a journal stored as base.vsnap and base.journal.
+     * @param base The path of the journal files, without an extension.
+     */
+    public VocabJournal(String base) {
+        this(base, false);
+    }
+
+    /**
+     * Constructs a journal stored as base.vsnap and base.journal.
+     * @param base The path of the journal files, without an extension.
+     * @param sync Whether to force each record to disk before its edit is made, so an edit
+     *             survives a power failure once the call that made it returns.
+     */
+    public VocabJournal(String base, boolean sync) {
+        this.snapshotFile = new File(base + VocabWriter.SNAPSHOT_EXTENSION);
+        this.journalFile = new File(base + ".journal");
+        this.sync = sync;
+    }
+
+    /**
+     * Rebuilds the catalog from the snapshot and replays the journal on top of it,
+     * then opens the journal for new records. A last record cut short by a crash ends the
+     * replay and is dropped from the file; a damaged record with others after it fails the
+     * recovery and leaves the file as it is.
+     * @param topics The empty list to fill with the recovered topics.
+     * @return The number of journal records replayed.
+     * @throws IOException if the files cannot be read, the journal is corrupt, or it does not
+     *         match the snapshot.
+     */
+    public int recover(TopicList<Vocab> topics) throws IOException {
+        long snapshotSize = -1;
+        long snapshotCrc = 0;
+        if (snapshotFile.exists()) {
+            new VocabLoader().loadSnapshot(snapshotFile, topics);
+            snapshotSize = snapshotFile.length();
+            snapshotCrc = checksum(snapshotFile);
+        }
+
+        int replayed = 0;
+        long validLength = 0;
+        boolean current = false;
+        if (journalFile.exists()) {
+            try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                current = data.readInt() == JOURNAL_MAGIC && data.readInt() == JOURNAL_VERSION
+                        && data.readLong() == snapshotSize && data.readInt() == (int) snapshotCrc;
+                validLength = HEADER_SIZE;
+                while (current) {
+                    byte[] record = readRecord(data, journalFile.length() - validLength, validLength);
+                    if (record == null) {
+                        break; // End of the journal, or a last record torn by a crash
+                    }
+                    try {
+                        apply(record, topics);
+                    } catch (IndexOutOfBoundsException e) {
+                        throw new IOException("Journal does not match the snapshot: record at byte "
+                                + validLength + " is out of range (" + e.getMessage() + ")", e);
+                    }
+                    validLength += 8 + record.length;
+                    replayed++;
+                }
+            } catch (EOFException e) {
+                // The header itself was cut short
+            }
+        }
+
+        if (current) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(validLength); // Drop a torn record, if any
+            }
+            out = new FileOutputStream(journalFile, true);
+            journalBytes = validLength;
+            records = replayed;
+        } else {
+            // No journal, or one written for an older snapshot whose edits the snapshot already holds
+            resetJournal(snapshotSize, snapshotCrc);
+        }
+        return replayed;
+    }
+
+    /**
+     * Records that a word was added to a topic.
+     * @param position The index of the topic.
+     * @param word The added word.
+     * @throws IOException if the record cannot be written.
+     */
+    public void addWord(int position, String word) throws IOException {
+        write(ADD_WORD, position, word);
+    }
+
+    /**
+     * Records that a word was removed from a topic.
+     * @param position The index of the topic.
+     * @param word The removed word.
+     * @throws IOException if the record cannot be written.
+     */
+    public void removeWord(int position, String word) throws IOException {
+        write(REMOVE_WORD, position, word);
+    }
+
+    /**
+     * Records that a word of a topic was replaced.
+     * @param position The index of the topic.
+     * @param oldWord The replaced word.
+     * @param newWord The new word.
+     * @throws IOException if the record cannot be written.
+     */
+    public void changeWord(int position, String oldWord, String newWord) throws IOException {
+        write(CHANGE_WORD, position, oldWord, newWord);
+    }
+
+    /**
+     * Records that a topic was inserted, together with its words.
+     * @param position The index the topic was inserted at.
+     * @param vocab The inserted topic.
+     * @throws IOException if the record cannot be written.
+     */
+    public void insertTopic(int position, Vocab vocab) throws IOException {
+        String[] strings = new String[vocab.wordCount() + 1];
+        strings[0] = vocab.getTopic();
+        int i = 1;
+        for (String word : vocab) {
+            strings[i++] = word;
+        }
+        write(INSERT_TOPIC, position, strings);
+    }
+
+    /**
+     * Records that a topic was removed.
+     * @param position The index the topic was removed from.
+     * @throws IOException if the record cannot be written.
+     */
+    public void removeTopic(int position) throws IOException {
+        write(REMOVE_TOPIC, position);
+    }
+
+    /**
+     * Compacts the journal once it holds enough records or bytes.
+     * @param topics The current catalog.
+     * @return true if the journal was compacted, false otherwise.
+     * @throws IOException if the snapshot or the journal cannot be written.
+     */
+    public boolean compactIfDue(Iterable<? extends TopicView> topics) throws IOException {
+        if (records < COMPACT_RECORDS && journalBytes < COMPACT_BYTES) {
+            return false;
+        }
+        compact(topics);
+        return true;
+    }
+
+    /**
+     * Writes the whole catalog to the snapshot and starts an empty journal on top of it.
+     * Used periodically, and whenever the catalog is replaced wholesale, such as by a file load.
+     * @param topics The current catalog.
+     * @throws IOException if the snapshot or the journal cannot be written.
+     */
+    public void compact(Iterable<? extends TopicView> topics) throws IOException {
+        new VocabWriter().saveSnapshot(snapshotFile, topics);
+        resetJournal(snapshotFile.length(), checksum(snapshotFile));
+    }
+
+    /**
+     * Closes the journal file.
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Appends one record: its length, the type, topic position and strings, then a CRC-32 of the body.
+     * @param type The record type.
+     * @param position The topic position the record applies to.
+     * @param strings The words or topic name of the record.
+     * @throws IOException if the record cannot be written.
+     */
+    private void write(byte type, int position, String... strings) throws IOException {
+        if (out == null) {
+            throw new IOException("The journal has not been opened");
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(type);
+        data.writeInt(position);
+        data.writeInt(strings.length);
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(body.size() + 8);
+        DataOutputStream framed = new DataOutputStream(record);
+        framed.writeInt(body.size());
+        body.writeTo(framed);
+        framed.writeInt((int) crc.getValue());
+        out.write(record.toByteArray()); // One write, so a crash tears at most this record
+        if (sync) {
+            out.getFD().sync();
+        }
+        journalBytes += record.size();
+        records++;
+    }
+
+    /**
+     * Reads the body of the next record. A crash in the middle of an append leaves a last
+     * record that is cut short, fails its checksum, or is zeros to the end of the file; that
+     * ends the journal. A bad record with more of the journal after it is corruption.
+     * @param data The journal, positioned at the start of a record.
+     * @param remaining The number of bytes left in the journal.
+     * @param offset The position of the record in the journal, for the error message.
+     * @return The record body, or null at the end of the journal or at a torn last record.
+     * @throws IOException if the journal cannot be read, or a record before the last is corrupt.
+     */
+    private static byte[] readRecord(DataInputStream data, long remaining, long offset) throws IOException {
+        if (remaining < 4) {
+            return null;
+        }
+        int length = data.readInt();
+        if (length > remaining - 8) {
+            return null; // Cut short by the end of the file
+        }
+        if (length < 9) {
+            if (length == 0 && zerosToEnd(data, remaining - 4)) {
+                return null; // Space the file system allocated for an append it never wrote
+            }
+            throw new IOException("Journal is corrupt: bad record length " + length + " at byte " + offset);
+        }
+        byte[] body = new byte[length];
+        data.readFully(body);
+        int expected = data.readInt();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() == expected) {
+            return body;
+        }
+        if (remaining == length + 8) {
+            return null; // The last record, torn by a crash
+        }
+        throw new IOException("Journal is corrupt: bad checksum in the record at byte " + offset);
+    }
+
+    /**
+     * Checks whether the rest of the journal is all zero bytes.
+     * @param data The journal.
+     * @param remaining The number of bytes left in it.
+     * @return true if every byte left is zero.
+     * @throws IOException if the journal cannot be read.
+     */
+    private static boolean zerosToEnd(DataInputStream data, long remaining) throws IOException {
+        for (long i = 0; i < remaining; i++) {
+            if (data.readByte() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies one record to the catalog.
+     * @param record The record body.
+     * @param topics The catalog being rebuilt.
+     * @throws IOException if the record refers to a topic that does not exist.
+     */
+    private static void apply(byte[] record, TopicList<Vocab> topics) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = data.readByte();
+        int position = data.readInt();
+        String[] strings = new String[data.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        if (type == INSERT_TOPIC) {
+            if (position < 0 || position > topics.size() || strings.length == 0) {
+                throw new IOException("Journal does not match the snapshot: topic insert at " + position);
+            }
+            Vocab vocab = new Vocab(strings[0]);
+            for (int i = 1; i < strings.length; i++) {
+                vocab.addWord(strings[i]);
+            }
+            topics.addBefore(position, vocab);
+            return;
+        }
+        Vocab vocab = topics.getVocabByIndex(position);
+        if (vocab == null) {
+            throw new IOException("Journal does not match the snapshot: no topic at " + position);
+        }
+        switch (type) {
+            case ADD_WORD:
+                vocab.addWord(strings[0]);
+                break;
+            case REMOVE_WORD:
+                vocab.removeWord(strings[0]);
+                break;
+            case CHANGE_WORD:
+                vocab.changeWord(strings[0], strings[1]);
+                break;
+            case REMOVE_TOPIC:
+                topics.removeAt(position);
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Replaces the journal with an empty one written for the given snapshot, and opens it.
+     * @param snapshotSize The size of the snapshot, or -1 if there is none.
+     * @param snapshotCrc The CRC-32 of the snapshot.
+     * @throws IOException if the journal cannot be written.
+     */
+    private void resetJournal(long snapshotSize, long snapshotCrc) throws IOException {
+        close();
+        File temp = new File(journalFile.getPath() + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new FileOutputStream(temp))) {
+            data.writeInt(JOURNAL_MAGIC);
+            data.writeInt(JOURNAL_VERSION);
+            data.writeLong(snapshotSize);
+            data.writeInt((int) snapshotCrc);
+        }
+        try {
+            Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        out = new FileOutputStream(journalFile, true);
+        journalBytes = HEADER_SIZE;
+        records = 0;
+    }
+
+    /**
+     * Computes the CRC-32 of a file.
+     * @param file The file.
+     * @return The checksum.
+     * @throws IOException if the file cannot be read.
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+}
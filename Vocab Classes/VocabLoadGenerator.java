@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for VocabServer. Several clients send requests back to back for a while,
+ * mixing word searches, topic pages, prefix listings and the topic list, then the latency
+ * of each kind of request is reported with its p50 and p99, along with the requests per second.
+ * <p>
+ * Each client waits for one answer before it sends the next request, so when the server
+ * stalls the clients send less and the tail latencies look better than an open stream of
+ * requests would see. Keep that in mind when comparing p99s from different setups.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabLoadGenerator {
+    private static final int SAMPLED_TOPICS = 64; // Topics fetched up front to pick search words from
+
+    private String url = "http://localhost:" + VocabServer.DEFAULT_PORT; // The server
+    private int clients = 16;        // Clients sending requests at once
+    private int warmupSeconds = 2;   // Seconds of requests that are not measured
+    private int seconds = 10;        // Seconds of measured requests
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String[] kinds = {"search", "topic", "prefix", "topics"}; // Kinds of request, in report order
+    private final int[] weights = {50, 30, 15, 5};                          // Percentage of each kind
+    private final VocabMetrics.Histogram[] latencies = new VocabMetrics.Histogram[kinds.length]; // Nanoseconds
+    private final LongAdder errors = new LongAdder(); // Failed or non-200 measured requests
+    private final List<String> words = new ArrayList<>(); // Words to search for
+    private int topicCount;                               // Topics on the server
+
+    /**
+     * Runs the load generator.
+     * @param args --url=base of the server, --clients=n, --warmup=seconds and --seconds=n.
+     * @throws IOException if the server cannot be reached to sample the catalog.
+     * @throws InterruptedException if interrupted while waiting for the clients.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        VocabLoadGenerator generator = new VocabLoadGenerator();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--url=")) {
+                generator.url = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+            } else if (arg.startsWith("--clients=")) {
+                generator.clients = Integer.parseInt(value);
+            } else if (arg.startsWith("--warmup=")) {
+                generator.warmupSeconds = Integer.parseInt(value);
+            } else if (arg.startsWith("--seconds=")) {
+                generator.seconds = Integer.parseInt(value);
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        generator.sample();
+        generator.run();
+    }
+
+    /**
+     * Counts the server's topics and picks words from some of them to search for.
+     * @throws IOException if the server cannot be reached.
+     * @throws InterruptedException if interrupted while waiting for it.
+     */
+    private void sample() throws IOException, InterruptedException {
+        // The topic list stops at the server's limit, so the count comes from its header
+        topicCount = Integer.parseInt(get("/topics?limit=1").headers().firstValue("X-Total-Count").orElse("0"));
+        Random random = new Random(42);
+        for (int i = 0; i < Math.min(SAMPLED_TOPICS, topicCount); i++) {
+            String[] lines = get("/topics/" + (1 + random.nextInt(topicCount))).body().split("\n");
+            for (int j = 1; j < lines.length && j <= 16; j++) { // The first line is the topic name
+                words.add(lines[j]);
+            }
+        }
+        if (words.isEmpty()) {
+            words.add("word"); // An empty catalog still answers searches
+        }
+        System.out.printf("%s: %d topics, %d sample words; %d clients, %d s warmup + %d s measured%n",
+                url, topicCount, words.size(), clients, warmupSeconds, seconds);
+    }
+
+    /**
+     * Sends requests from every client until the time is up, then prints the report.
+     * @throws InterruptedException if interrupted while waiting for the clients.
+     */
+    private void run() throws InterruptedException {
+        for (int i = 0; i < kinds.length; i++) {
+            latencies[i] = new VocabMetrics.Histogram();
+        }
+        long measureFrom = System.nanoTime() + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + seconds * 1_000_000_000L;
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            threads[c] = new Thread(() -> client(measureFrom, end), "client-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(seconds);
+    }
+
+    /**
+     * Sends one client's requests until the end time, recording those after the warmup.
+     * @param measureFrom When the warmup ends, in System.nanoTime() terms.
+     * @param end When to stop.
+     */
+    private void client(long measureFrom, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+            int kind = pickKind(random.nextInt(100));
+            String path = pathFor(kind, random);
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(url + path)).GET().build();
+                ok = http.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode() == 200;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (start >= measureFrom) {
+                latencies[kind].record(System.nanoTime() - start);
+                if (!ok) {
+                    errors.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the kind of a request by its weight.
+     * @param roll A number from 0 to 99.
+     * @return The index of the kind.
+     */
+    private int pickKind(int roll) {
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the path and query of a request.
+     * @param kind The index of the kind of request.
+     * @param random The client's random numbers.
+     * @return The path, starting with /.
+     */
+    private String pathFor(int kind, Random random) {
+        String word = words.get(random.nextInt(words.size()));
+        switch (kinds[kind]) {
+            case "search":
+                return "/search?word=" + URLEncoder.encode(word, StandardCharsets.UTF_8);
+            case "topic":
+                return "/topics/" + (1 + random.nextInt(Math.max(topicCount, 1)));
+            case "prefix":
+                String prefix = word.substring(0, Math.min(2, word.length()));
+                return "/prefix?prefix=" + URLEncoder.encode(prefix, StandardCharsets.UTF_8);
+            default:
+                return "/topics";
+        }
+    }
+
+    /**
+     * Prints the latency of each kind of request and the throughput.
+     * @param elapsedSeconds The measured duration.
+     */
+    private void report(int elapsedSeconds) {
+        System.out.printf("%-8s %10s %10s %10s %10s %10s%n", "Request", "Count", "Mean us", "p50 us", "p99 us", "Max us");
+        long total = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            VocabMetrics.Histogram h = latencies[i];
+            System.out.printf("%-8s %10d %10.1f %10.1f %10.1f %10.1f%n", kinds[i], h.count(),
+                    h.mean() / 1e3, h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.max() / 1e3);
+            total += h.count();
+        }
+        System.out.printf("%d requests, %.0f requests/sec, %d errors%n", total,
+                (double) total / Math.max(elapsedSeconds, 1), errors.sum());
+    }
+
+    /**
+     * Sends one GET request.
+     * @param path The path and query, starting with /.
+     * @return The answer.
+     * @throws IOException if the request fails or is not answered with 200.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + path)).GET().build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() != 200) {
+            throw new IOException(path + " answered " + response.statusCode());
+        }
+        return response;
+    }
+}
@@ -0,0 +1,501 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads vocabulary files in the #topic / word format, or binary snapshots written by
+ * VocabWriter, into a topic list, and records how much it read and how long it took.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabLoader {
+    private static final int BUFFER_SIZE = 1 << 16; // Characters buffered per read from the file
+    private static final int WINDOW_SIZE = 1 << 28;  // Bytes mapped at a time by loadMapped
+    private static final int SECTION_SIZE = 1 << 20; // Bytes below which loadParallel stops splitting
+    private static final int SNAPSHOT_HEADER_SIZE = 24; // Magic, version, string, topic and word counts
+
+    private long linesRead;    // Lines read by the last load
+    private long bytesRead;    // Bytes read by the last load
+    private long elapsedNanos; // Duration of the last load
+
+    /**
+     * Loads a text vocabulary file into an empty topic list. The caller's current
+     * catalog is never touched, so a failed load leaves it as it was.
+     * @param file The file to read.
+     * @param topics The empty list to fill with the topics of the file.
+     * @throws IOException if the file cannot be found or read.
+     */
+    public void loadText(File file, TopicList<Vocab> topics) throws IOException {
+        long start = System.nanoTime();
+        long lines = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            Vocab currentVocab = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                currentVocab = parseLine(line, currentVocab, topics);
+            }
+        }
+        record(lines, file.length(), start);
+    }
+
+    /**
+     * Loads a text vocabulary file by memory-mapping it, for very large files.
+     * The file is mapped in windows of at most 256 MB, so it may be larger than 2 GB;
+     * a window ends at its last complete line and the next window starts right after it.
+     * Topic headers and line ends are found on the raw bytes, and only the trimmed
+     * topic names and words are decoded from UTF-8. Lines end with \n; a \r before it is
+     * trimmed like other surrounding whitespace.
+     * It is no faster than loadText for catalogs up to a million words, where building the
+     * topics costs more than reading the file; mapping pays off only for files too large
+     * to read comfortably through a buffered reader.
+     * @param file The file to read.
+     * @param topics The empty list to fill with the topics of the file.
+     * @throws IOException if the file cannot be found or read.
+     */
+    public void loadMapped(File file, TopicList<Vocab> topics) throws IOException {
+        long start = System.nanoTime();
+        LineParser parser = new LineParser(null); // Carries the current topic from window to window
+        long lines = mapWindows(file, (window, end) -> parser.parse(window, 0, end, topics));
+        record(lines, file.length(), start);
+    }
+
+    /**
+     * Loads a text vocabulary file by memory-mapping it and parsing its topic sections in parallel.
+     * Each window is split at lines starting with '#' into sections that are parsed on the
+     * common ForkJoinPool, each into its own topics; the results are joined back in file order.
+     * The file format and windowing are the same as for loadMapped.
+     * With one CPU, or with catalogs up to a million words, it is no faster than loadText,
+     * since every new word is added to the shared word dictionary under one lock.
+     * @param file The file to read.
+     * @param topics The empty list to fill with the topics of the file.
+     * @throws IOException if the file cannot be found or read.
+     */
+    public void loadParallel(File file, TopicList<Vocab> topics) throws IOException {
+        long start = System.nanoTime();
+        Vocab[] carry = new Vocab[1]; // Topic still open at the end of the previous window
+        long lines = mapWindows(file, (window, end) -> {
+            Section section = ForkJoinPool.commonPool().invoke(new SectionTask(window, 0, end, carry[0]));
+            for (Vocab vocab : section.topics) {
+                topics.addLast(vocab);
+            }
+            carry[0] = section.lastVocab;
+            return section.lines;
+        });
+        record(lines, file.length(), start);
+    }
+
+    /**
+     * Loads a binary snapshot written by VocabWriter.saveSnapshot. Each string of the table
+     * is decoded once and, the first time a topic holds it as a word, mapped to its id in the
+     * shared word dictionary; each topic's words are then handed to its store in one go, by
+     * id, so no word is looked up or hashed per occurrence. Every count in the file is checked
+     * against the bytes left before anything is allocated for it, so a corrupt snapshot is
+     * refused rather than exhausting memory. Each topic and word counts as one line read.
+     * @param file The file to read.
+     * @param topics The empty list to fill with the topics of the snapshot.
+     * @throws IOException if the file cannot be found or read, or is not a valid snapshot.
+     */
+    public void loadSnapshot(File file, TopicList<Vocab> topics) throws IOException {
+        long start = System.nanoTime();
+        long lines = 0;
+        long left = file.length() - SNAPSHOT_HEADER_SIZE; // Bytes not yet read past the header
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (left < 0 || data.readInt() != VocabWriter.SNAPSHOT_MAGIC) {
+                throw new IOException("Not a vocabulary snapshot: " + file);
+            }
+            int version = data.readInt();
+            if (version != VocabWriter.SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            int stringCount = data.readInt();
+            int topicCount = data.readInt();
+            long wordCount = data.readLong();
+            // Each string takes at least its length, each topic its name and count, each word its index
+            if (stringCount < 0 || topicCount < 0 || wordCount < 0 || wordCount > left / 4
+                    || 4L * stringCount + 8L * topicCount + 4 * wordCount > left) {
+                throw new IOException("Corrupt snapshot header: " + file);
+            }
+
+            String[] strings = new String[stringCount];
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < stringCount; i++) {
+                int length = data.readInt();
+                left -= 4;
+                if (length < 0 || length > left) {
+                    throw new IOException("Corrupt snapshot string table: " + file);
+                }
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                data.readFully(scratch, 0, length);
+                left -= length;
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+
+            WordDictionary dictionary = WordDictionary.shared();
+            int[] wordIds = new int[stringCount]; // Dictionary id of each string + 1, or 0 until used as a word
+            int[] ids = new int[16];              // Dictionary ids of the words of one topic
+            for (int t = 0; t < topicCount; t++) {
+                String name = snapshotString(strings, data.readInt(), file);
+                int words = data.readInt();
+                left -= 8;
+                if (words < 0 || 4L * words > left) {
+                    throw new IOException("Corrupt snapshot word count in topic " + name + ": " + file);
+                }
+                if (ids.length < words) {
+                    ids = new int[Math.max(words, ids.length * 2)];
+                }
+                for (int w = 0; w < words; w++) {
+                    int index = data.readInt();
+                    String word = snapshotString(strings, index, file);
+                    if (wordIds[index] == 0) {
+                        wordIds[index] = dictionary.idOf(word) + 1;
+                    }
+                    ids[w] = wordIds[index] - 1;
+                }
+                left -= 4L * words;
+                topics.addLast(new Vocab(name, dictionary, ids, words));
+                lines += 1 + words;
+            }
+        }
+        record(lines, file.length(), start);
+    }
+
+    /**
+     * Returns the number of lines read by the last load.
+     * @return The number of lines.
+     */
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    /**
+     * Returns the number of bytes read by the last load.
+     * @return The number of bytes.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the duration of the last load.
+     * @return The duration in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Describes the throughput of the last load.
+     * @return A line such as "Read 398 lines (3251 bytes) in 2 ms: 199000 lines/sec, 1.6 MB/sec".
+     */
+    public String report() {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("Read %d lines (%d bytes) in %d ms: %.0f lines/sec, %.1f MB/sec",
+                linesRead, bytesRead, elapsedNanos / 1_000_000, linesRead / seconds, bytesRead / seconds / 1e6);
+    }
+
+    /**
+     * Handles one line of the file: a #topic line starts a new topic, any other
+     * non-blank line is a word of the current topic. Words before the first topic are ignored.
+     * @param line The line, without its line terminator.
+     * @param currentVocab The topic being read, or null before the first topic.
+     * @param topics The list receiving new topics.
+     * @return The topic being read after this line.
+     */
+    private static Vocab parseLine(String line, Vocab currentVocab, TopicList<Vocab> topics) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return currentVocab; // Blank line
+        }
+        if (line.charAt(start) == '#') {
+            start++; // Skip the '#' and the spaces before the topic name
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+            Vocab vocab = new Vocab(line.substring(start, end));
+            topics.addLast(vocab);
+            return vocab;
+        }
+        if (currentVocab != null) {
+            currentVocab.addWord(line.substring(start, end));
+        }
+        return currentVocab;
+    }
+
+    /**
+     * Looks up a string of a snapshot's string table.
+     * @param strings The string table.
+     * @param id The index read from the snapshot.
+     * @param file The snapshot, for the error message.
+     * @return The string.
+     * @throws IOException if the index is outside the table.
+     */
+    private static String snapshotString(String[] strings, int id, File file) throws IOException {
+        if (id < 0 || id >= strings.length) {
+            throw new IOException("Corrupt snapshot string index " + id + ": " + file);
+        }
+        return strings[id];
+    }
+
+    /**
+     * Records the statistics of a finished load.
+     * @param lines The number of lines read.
+     * @param bytes The number of bytes read.
+     * @param start The System.nanoTime() value when the load started.
+     */
+    private void record(long lines, long bytes, long start) {
+        elapsedNanos = System.nanoTime() - start;
+        linesRead = lines;
+        bytesRead = bytes;
+        VocabMetrics.read(bytes);
+    }
+
+    /**
+     * Maps a file window by window and hands each one to a parser.
+     * Every window but the last ends just after its last line end.
+     * @param file The file to read.
+     * @param parser The parser receiving each window.
+     * @return The total number of lines parsed.
+     * @throws IOException if the file cannot be read, or holds a line longer than 2 GB.
+     */
+    private static long mapWindows(File file, WindowParser parser) throws IOException {
+        long lines = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            long windowSize = WINDOW_SIZE;
+            while (position < fileSize) {
+                int length = (int) Math.min(windowSize, fileSize - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int end = length;
+                if (position + length < fileSize) {
+                    while (end > 0 && window.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        // Not a single line end in the window: map a larger one
+                        if (length == Integer.MAX_VALUE) {
+                            throw new IOException("Line longer than 2 GB at offset " + position);
+                        }
+                        windowSize = Math.min(windowSize * 2, Integer.MAX_VALUE);
+                        continue;
+                    }
+                }
+                lines += parser.parse(window, end);
+                position += end; // Start the next window at the first incomplete line
+                windowSize = WINDOW_SIZE;
+            }
+        }
+        return lines;
+    }
+
+    // Parses the complete lines at the start of a mapped window
+    private interface WindowParser {
+        /**
+         * Parses the lines in bytes [0, end) of a window.
+         * @param window The mapped window.
+         * @param end The index just past the last line to parse.
+         * @return The number of lines parsed.
+         */
+        long parse(MappedByteBuffer window, int end);
+    }
+
+    // Parser for lines held in a byte buffer; one instance per thread
+    private static class LineParser {
+        private byte[] scratch = new byte[256]; // Copy of the bytes being decoded
+        private Vocab currentVocab;             // The topic being read, or null before the first topic
+
+        /**
+         * Constructs a parser.
+         * @param currentVocab The topic that words before the first header belong to, or null.
+         */
+        LineParser(Vocab currentVocab) {
+            this.currentVocab = currentVocab;
+        }
+
+        /**
+         * Parses the lines in a range of bytes, in the same way as parseLine for a String line.
+         * @param buffer The bytes.
+         * @param start The index of the first byte, at the start of a line.
+         * @param end The index just past the last byte; a last line without a line end counts too.
+         * @param topics The list receiving new topics.
+         * @return The number of lines parsed.
+         */
+        long parse(ByteBuffer buffer, int start, int end, TopicList<Vocab> topics) {
+            long lines = 0;
+            int lineStart = start;
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    parseLine(buffer, lineStart, i, topics);
+                    lines++;
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart < end) { // Last line without a line end
+                parseLine(buffer, lineStart, end, topics);
+                lines++;
+            }
+            return lines;
+        }
+
+        /**
+         * Handles one line.
+         * @param buffer The bytes.
+         * @param start The index of the first byte of the line.
+         * @param end The index just past the last byte of the line, excluding the \n.
+         * @param topics The list receiving new topics.
+         */
+        private void parseLine(ByteBuffer buffer, int start, int end, TopicList<Vocab> topics) {
+            // Bytes of multi-byte UTF-8 characters are negative, so only ASCII whitespace is trimmed
+            while (start < end && isBlank(buffer.get(start))) {
+                start++;
+            }
+            while (end > start && isBlank(buffer.get(end - 1))) {
+                end--;
+            }
+            if (start == end) {
+                return; // Blank line
+            }
+            if (buffer.get(start) == '#') {
+                start++; // Skip the '#' and the spaces before the topic name
+                while (start < end && isBlank(buffer.get(start))) {
+                    start++;
+                }
+                currentVocab = new Vocab(decode(buffer, start, end));
+                topics.addLast(currentVocab);
+            } else if (currentVocab != null) {
+                currentVocab.addWord(decode(buffer, start, end));
+            }
+        }
+
+        /**
+         * Decodes a range of bytes as UTF-8.
+         * @param buffer The bytes.
+         * @param start The index of the first byte.
+         * @param end The index just past the last byte.
+         * @return The decoded string.
+         */
+        private String decode(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Checks if a byte is whitespace or a control character, as String.trim() treats it.
+         * @param b The byte.
+         * @return true if the byte is trimmed, false otherwise.
+         */
+        private static boolean isBlank(byte b) {
+            return b >= 0 && b <= ' ';
+        }
+    }
+
+    // Topics parsed from a range of a window
+    private static class Section {
+        final DoublyLinkedList<Vocab> topics; // Topics that start in the range, in file order
+        final Vocab lastVocab; // Topic still open at the end of the range, or null
+        final long lines;      // Number of lines in the range
+
+        /**
+         * Constructs a parsed section.
+         * @param topics The topics that start in the range.
+         * @param lastVocab The topic still open at the end of the range.
+         * @param lines The number of lines in the range.
+         */
+        Section(DoublyLinkedList<Vocab> topics, Vocab lastVocab, long lines) {
+            this.topics = topics;
+            this.lastVocab = lastVocab;
+            this.lines = lines;
+        }
+    }
+
+    // Parses a range of a window, splitting it in two at a topic header while it is large
+    private static class SectionTask extends RecursiveTask<Section> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final int start;   // Index of the first byte, at the start of a line
+        private final int end;     // Index just past the last byte
+        private final Vocab carry; // Topic that words before the first header belong to, or null
+
+        /**
+         * Constructs a task for a range of bytes.
+         * @param buffer The bytes.
+         * @param start The index of the first byte, at the start of a line.
+         * @param end The index just past the last byte.
+         * @param carry The topic that words before the first header belong to, or null.
+         */
+        SectionTask(ByteBuffer buffer, int start, int end, Vocab carry) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.carry = carry;
+        }
+
+        @Override
+        protected Section compute() {
+            int split = end - start > SECTION_SIZE ? findHeader(start + (end - start) / 2) : -1;
+            if (split < 0) {
+                DoublyLinkedList<Vocab> topics = new DoublyLinkedList<>();
+                LineParser parser = new LineParser(carry);
+                long lines = parser.parse(buffer, start, end, topics);
+                return new Section(topics, parser.currentVocab, lines);
+            }
+
+            // The right half starts with a header, so only the left half can continue the carried topic
+            SectionTask left = new SectionTask(buffer, start, split, carry);
+            SectionTask right = new SectionTask(buffer, split, end, null);
+            left.fork();
+            Section rightSection = right.compute();
+            Section leftSection = left.join();
+            leftSection.topics.appendAll(rightSection.topics);
+            Vocab lastVocab = rightSection.lastVocab != null ? rightSection.lastVocab : leftSection.lastVocab;
+            return new Section(leftSection.topics, lastVocab, leftSection.lines + rightSection.lines);
+        }
+
+        /**
+         * Finds a line starting with '#' near a position, looking forward first, then back.
+         * @param from The position to search from.
+         * @return The index of the '#', or -1 if the range holds no header after its first line.
+         */
+        private int findHeader(int from) {
+            for (int i = from; i < end; i++) {
+                if (buffer.get(i) == '#' && buffer.get(i - 1) == '\n') {
+                    return i;
+                }
+            }
+            for (int i = from - 1; i > start; i--) {
+                if (buffer.get(i) == '#' && buffer.get(i - 1) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -1,10 +1,25 @@
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import javax.management.JMException;
 
 /**
  * VocabManagmenet manages vocabularies (topics and words).
@@ -13,16 +28,82 @@ import java.io.PrintWriter;
  */
 public class VocabManagement {
 	
-    /** The list of vocabularies stored as a doubly linked list. 
-    */
-    private static DoublyLinkedList<Vocab> vocab_List = new DoublyLinkedList<>();
+    /** The catalog the menus work on: its topics, word index, files and journal. */
+    private static VocabCatalog catalog = new VocabCatalog();
+    /** Whether topics keep their words off the heap, each in an OffHeapArena of its own. */
+    private static boolean offHeapWords = false;
     private static Scanner keyIn = new Scanner(System.in);
+    /** Bytes of batch output buffered before each write to the console. */
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+    /** Topic names fetched and printed per write when listing every topic. */
+    private static final int TOPICS_PER_BATCH = 1024;
+    /** Topics listed per page when picking a topic. */
+    private static final int TOPICS_PER_PAGE = 20;
+    /** Words shown per page when browsing a topic. */
+    private static final int WORDS_PER_PAGE = 100;
 
     /**
      * The main method to start the vocabulary management interactive Menu
-     * @param args The command line arguments.
+     * @param args The command line arguments: --topics=skiplist keeps topics in an indexable skip list,
+     *             --loader=mapped or --loader=parallel memory-maps files when loading them,
+     *             --journal=base recovers from and journals every edit to base.vsnap and base.journal,
+     *             --sync forces each journal record to disk before its edit is made,
+     *             --words=array keeps each topic's words as dictionary ids in an array,
+     *             --words=offheap keeps them as UTF-8 bytes outside the Java heap,
+     *             --batch=file runs the commands in a file instead of showing the menu
+     *             (--batch=- reads them from standard input),
+     *             --metrics records metrics and publishes them through JMX,
+     *             --metrics=seconds also prints them to standard error that often.
      */
     public static void main(String[] args) {
+        String batchSource = null;
+        TopicList<Vocab> topics = new DoublyLinkedList<>();
+        String loaderMode = "text";
+        String journalBase = null;
+        boolean syncJournal = false;
+        for (String arg : args) {
+            if (arg.equals("--topics=skiplist")) {
+                topics = new IndexableSkipList<>();
+            } else if (arg.equals("--topics=linked")) {
+                topics = new DoublyLinkedList<>();
+            } else if (arg.equals("--loader=text") || arg.equals("--loader=mapped") || arg.equals("--loader=parallel")) {
+                loaderMode = arg.substring("--loader=".length());
+            } else if (arg.equals("--words=array")) {
+                Vocab.setWordStoreFactory(Vocab.WordArray::new);
+                offHeapWords = false;
+            } else if (arg.equals("--words=offheap")) {
+                Vocab.setWordStoreFactory(OffHeapWordStore::new);
+                offHeapWords = true;
+            } else if (arg.equals("--words=linked")) {
+                Vocab.setWordStoreFactory(Vocab.SinglyLinkedList::new);
+                offHeapWords = false;
+            } else if (arg.startsWith("--journal=")) {
+                journalBase = arg.substring("--journal=".length());
+            } else if (arg.equals("--sync")) {
+                syncJournal = true;
+            } else if (arg.startsWith("--batch=")) {
+                batchSource = arg.substring("--batch=".length());
+            } else if (arg.equals("--metrics")) {
+                startMetrics(0);
+            } else if (arg.startsWith("--metrics=")) {
+                try {
+                    startMetrics(Long.parseLong(arg.substring("--metrics=".length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Not a number of seconds: " + arg);
+                }
+            } else {
+                System.out.println("Unknown option: " + arg);
+            }
+        }
+        catalog = new VocabCatalog(topics);
+        catalog.setLoaderMode(loaderMode);
+        if (journalBase != null) {
+            recoverFromJournal(new VocabJournal(journalBase, syncJournal));
+        }
+        if (batchSource != null) {
+            runBatch(batchSource);
+            return;
+        }
 
         int choice;
         do {
@@ -30,40 +111,44 @@ public class VocabManagement {
             choice = keyIn.nextInt();
             keyIn.nextLine();
             
-            switch (choice) {
-                case 1:
-                    browseTopics();
-                    break;
-                case 2:
-                    insertTopicBefore();
-                    break;
-                case 3:
-                    insertTopicAfter();
-                    break;
-                case 4:
-                    removeTopic();
-                    break;
-                case 5:
-                    modifyTopic();
-                    break;
-                case 6:
-                    searchForWord();
-                    break;
-                case 7:
-                    loadFromFile();
-                    break;
-                case 8:
-                    showWordsStartingWith();
-                    break;
-                case 9:
-                    saveToFile();
-                    break;
-                case 0:
-                    System.out.println("Exiting.. Goodbye");
-                	System.exit(0);
-                    break;
-                default:
-                    System.out.println("Invalid option, try again.");
+            try {
+                switch (choice) {
+                    case 1:
+                        browseTopics();
+                        break;
+                    case 2:
+                        insertTopicBefore();
+                        break;
+                    case 3:
+                        insertTopicAfter();
+                        break;
+                    case 4:
+                        removeTopic();
+                        break;
+                    case 5:
+                        modifyTopic();
+                        break;
+                    case 6:
+                        searchForWord();
+                        break;
+                    case 7:
+                        loadFromFile();
+                        break;
+                    case 8:
+                        showWordsStartingWith();
+                        break;
+                    case 9:
+                        saveToFile();
+                        break;
+                    case 0:
+                        System.out.println("Exiting.. Goodbye");
+                    	System.exit(0);
+                        break;
+                    default:
+                        System.out.println("Invalid option, try again.");
+                }
+            } catch (UncheckedIOException e) {
+                System.out.println("The edit could not be written to the journal: " + e.getCause().getMessage());
             }
         } while (choice != 0);
 
@@ -94,24 +179,17 @@ public class VocabManagement {
      * Allows the user to browse through available topics and their associated words.
      */
     private static void browseTopics() {
-        System.out.println("---------------------------------------");
-        System.out.println("\tPick a topic");
-        System.out.println("---------------------------------------");
-        vocab_List.displayTopics();
-        System.out.println("0: Exit");
-        System.out.println("---------------------------------------");
-        System.out.print("Enter your choice: ");
-        int topicChoice = keyIn.nextInt();
+        int topicChoice = pickTopic();
         if (topicChoice == 0) return;
-        if (topicChoice < 0 || topicChoice > vocab_List.size()) {
+        if (topicChoice < 0 || topicChoice > catalog.size()) {
             System.out.println("Invalid choice, try again.");
             return;
         }
         
-        Vocab selectedTopic = vocab_List.getVocabByIndex(topicChoice - 1); // Adjust for zero-based indexing
+        Vocab selectedTopic = catalog.topicAt(topicChoice - 1); // Adjust for zero-based indexing
         if (selectedTopic != null) {
             System.out.println("Topic: " + selectedTopic.getTopic());
-            selectedTopic.displayWords();
+            browseWords(selectedTopic);
         } else {
             System.out.println("Topic not found, try again.");
         }
@@ -121,28 +199,18 @@ public class VocabManagement {
      * Inserts a new topic before another specified topic.
      */
     private static void insertTopicBefore() {
-        System.out.println("---------------------------------------");
-        System.out.println("\tPick a topic");
-        System.out.println("---------------------------------------");
-
-        vocab_List.displayTopics();
-        System.out.println("0: Exit");
-
-        System.out.println("---------------------------------------");
-        System.out.print("Enter your choice: ");
-        int position = keyIn.nextInt();
+        int position = pickTopic();
 
         if (position == 0) {
             return; // Exit the method if the user selects cancel
         }
 
         // Adjusting for 1-based index input to 0-based index used in the list
-        if (position < 1 || position > vocab_List.size()) {
+        if (position < 1 || position > catalog.size()) {
             System.out.println("Invalid position, try again.");
             return;
         }
 
-        keyIn.nextLine(); // Consume the leftover newline
         System.out.print("Enter a topic name: ");
         String topicName = keyIn.nextLine().trim();
 
@@ -161,34 +229,24 @@ public class VocabManagement {
         }
 
         // Insert the new topic before the given position
-        vocab_List.addBefore(position - 1, newTopic); 
+        catalog.insertTopic(position - 1, newTopic);
     }
     /**
      * Inserts a new topic after another specified topic.
      */
     private static void insertTopicAfter() {
-    	System.out.println("---------------------------------------");
-        System.out.println("\tPick a topic");
-        System.out.println("---------------------------------------");
-
-        vocab_List.displayTopics();
-        System.out.println("0: Exit");
-        
-        System.out.println("---------------------------------------");
-        System.out.print("Enter your choice: ");
-        int position = keyIn.nextInt();
+        int position = pickTopic();
 
         if (position == 0) {
             return; 
         }
 
         // Adjusting for 1-based index input to 0-based index used in the list
-        if (position < 1 || position > vocab_List.size()) {
+        if (position < 1 || position > catalog.size()) {
             System.out.println("Invalid position. Please try again.");
             return;
         }
 
-        keyIn.nextLine(); // Consume the leftover newline
         System.out.print("Enter a topic name: ");
         String topicName = keyIn.nextLine().trim();
 
@@ -207,36 +265,26 @@ public class VocabManagement {
         }
 
         // Insert the new topic after the given position
-        vocab_List.addAfter(position - 1, newTopic); // Method to be implemented in the DoublyLinkedList class
+        catalog.insertTopic(position, newTopic);
     }
 
     /**
      * Removes a topic from the vocabulary list.
      */
     private static void removeTopic() {
-    	System.out.println("---------------------------------------");
-        System.out.println("\tPick a topic");
-        System.out.println("---------------------------------------");
-
-        vocab_List.displayTopics();
-        System.out.println("0: Exit");
-
-        System.out.println("---------------------------------------");
-        System.out.print("Enter your choice: ");
-        int topicNumber = keyIn.nextInt();
-        keyIn.nextLine();
+        int topicNumber = pickTopic();
 
         if (topicNumber == 0) {
             return; // Exit the method if the user selects cancel
         }
 
-        if (topicNumber < 1 || topicNumber > vocab_List.size()) {
+        if (topicNumber < 1 || topicNumber > catalog.size()) {
             System.out.println("Invalid choice. Please try again.");
             return;
         }
 
         // Remove the topic at the given position
-        Vocab removedVocab = vocab_List.removeAt(topicNumber - 1); 
+        Vocab removedVocab = catalog.removeTopic(topicNumber - 1);
         if (removedVocab != null) {
             System.out.println("Removed topic: " + removedVocab.getTopic());
         } else {
@@ -248,29 +296,18 @@ public class VocabManagement {
      * Modifies a topic by adding, removing, or changing words.
      */
     private static void modifyTopic() {
-       
-    	System.out.println("---------------------------------------");
-        System.out.println("\tPick a topic");
-        System.out.println("---------------------------------------");
-
-        vocab_List.displayTopics();
-        System.out.println("0: Exit");
-
-        System.out.println("---------------------------------------");
-        System.out.print("Enter your choice: ");
-        int topicNumber = keyIn.nextInt();
-        keyIn.nextLine();
+        int topicNumber = pickTopic();
 
         if (topicNumber == 0) {
             return; // Exit the method if the user selects cancel
         }
 
-        if (topicNumber < 1 || topicNumber > vocab_List.size()) {
+        if (topicNumber < 1 || topicNumber > catalog.size()) {
             System.out.println("Invalid choice. Please try again.");
             return;
         }
         
-        Vocab modifiedVocab = vocab_List.getVocabByIndex(topicNumber - 1);
+        Vocab modifiedVocab = catalog.topicAt(topicNumber - 1);
         if (modifiedVocab == null) {
             System.out.println("Invalid topic number.");
             return;
@@ -294,12 +331,12 @@ public class VocabManagement {
             case "a": // Add a word
                 System.out.println("Type a word and press Enter, or press Enter to end input");
                 String wordToAdd = keyIn.nextLine().trim();
-                modifiedVocab.addWord(wordToAdd);
+                catalog.addWord(topicNumber - 1, wordToAdd);
                 break;
             case "r": // Remove a word
                 System.out.print("Enter a word to remove:");
                 String wordToRemove = keyIn.nextLine().trim();
-                if (modifiedVocab.removeWord(wordToRemove)) {
+                if (catalog.removeWord(topicNumber - 1, wordToRemove)) {
                     System.out.println("Word removed.");
                 } else {
                     System.out.println("sorry, there is no word: " + wordToRemove);
@@ -324,7 +361,7 @@ public class VocabManagement {
                 String newWord = keyIn.nextLine().trim();
                 
                 // Now we made the word exists, so we can attempt to change it
-                modifiedVocab.changeWord(wordToChange, newWord);
+                catalog.changeWord(topicNumber - 1, wordToChange, newWord);
                 System.out.println("Word changed.");
                 break;
             case "0": // Exit
@@ -341,22 +378,15 @@ public class VocabManagement {
         
     	System.out.print("Enter the word to search for: ");
         String wordToSearch = keyIn.nextLine();
-        boolean found = false;
-
-        for (int i = 0; i < vocab_List.size(); i++) {
-            Vocab currentVocab = vocab_List.getVocabByIndex(i);
-            if (currentVocab != null && currentVocab.containsWord(wordToSearch)) {
-                if (!found) {
-                    System.out.println("This word is in the following Topic(s):");
-                    found = true;
-                }
-                System.out.println(currentVocab.getTopic());
-            }
-            
-        }
+        List<Vocab> topics = catalog.search(wordToSearch);
 
-        if (!found) {
+        if (topics.isEmpty()) {
             System.out.println("This word is not present in any topic.");
+        } else {
+            System.out.println("This word is in the following Topic(s):");
+            for (Vocab currentVocab : topics) {
+                System.out.println(currentVocab.getTopic());
+            }
         }
     }
 
@@ -370,29 +400,370 @@ public class VocabManagement {
     }
     /**
      * Loads vocabulary data from the specified file into the application.
+     * Files ending in .vsnap are read as binary snapshots, others as text.
      * @param filename The name of the file to load vocabulary data from.
      */
     private static void loadVocabFromFile(String filename) {
-        try (Scanner keyIn = new Scanner(new File(filename))) {
-            Vocab currentVocab = null;
-            vocab_List.clear(); // To make sure the existing list is clear before loading a new file
-
-            while (keyIn.hasNextLine()) {
-                String line = keyIn.nextLine().trim();
-                if (line.startsWith("#")) {
-                    String topic = line.substring(1).trim(); // Remove '#' and trim the topic name
-                    currentVocab = new Vocab(topic);
-                    vocab_List.addLast(currentVocab); // Add to the end of the doubly linked list
-                } else if (!line.isEmpty() && currentVocab != null) {
-                    currentVocab.addWord(line); // Add the word to the current vocab's singly linked list
+        VocabLoader loader;
+        try {
+            loader = catalog.load(new File(filename));
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            System.out.println("The file " + filename + " was not found.");
+            return;
+        } catch (IOException e) {
+            System.out.println("The file " + filename + " could not be read: " + e.getMessage());
+            return;
+        }
+        System.out.println("Done loading."); // Notify the user of successful loading
+        System.out.println(loader.report());
+        System.out.println(offHeapWords ? OffHeapArena.report() : WordDictionary.shared().report());
+    }
+
+    /**
+     * Rebuilds the catalog from the journal's snapshot and records at startup.
+     * @param journal The journal to recover from and journal every edit to.
+     */
+    private static void recoverFromJournal(VocabJournal journal) {
+        try {
+            int replayed = catalog.recover(journal);
+            System.out.println("Recovered " + catalog.size() + " topics and replayed " + replayed + " journal records.");
+        } catch (IOException e) {
+            System.out.println("The journal could not be recovered, so edits will not be journaled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the numbered list of topic names, numbered from 1.
+     * It goes a page at a time, each page in one write, so a huge catalog is never copied whole.
+     */
+    private static void displayTopics() {
+        int number = 1;
+        List<String> page;
+        while (!(page = catalog.topicNames(number - 1, TOPICS_PER_BATCH)).isEmpty()) {
+            StringBuilder text = new StringBuilder();
+            for (String name : page) {
+                text.append(number).append(": ").append(name).append(System.lineSeparator());
+                number++;
+            }
+            System.out.print(text);
+        }
+    }
+
+    /**
+     * Shows the topics a page at a time and asks for one. Typing n or p moves to the next or
+     * previous page; each page is fetched from where the last one ended, so paging through a
+     * huge catalog never walks it from the start.
+     * @return The number the user entered, counting from 1, 0 to exit, or -1 if it was not a number.
+     */
+    private static int pickTopic() {
+        int from = 0; // Position of the first topic on the page
+        while (true) {
+            List<String> page = catalog.topicNames(from, TOPICS_PER_PAGE);
+            StringBuilder text = new StringBuilder();
+            String line = System.lineSeparator();
+            text.append("---------------------------------------").append(line);
+            text.append("\tPick a topic").append(line);
+            text.append("---------------------------------------").append(line);
+            int number = from + 1;
+            for (String name : page) {
+                text.append(number).append(": ").append(name).append(line);
+                number++;
+            }
+            if (catalog.size() > TOPICS_PER_PAGE) {
+                text.append("Topics ").append(from + 1).append('-').append(number - 1).append(" of ")
+                        .append(catalog.size()).append("; n: next page, p: previous page").append(line);
+            }
+            text.append("0: Exit").append(line);
+            text.append("---------------------------------------").append(line);
+            text.append("Enter your choice: ");
+            System.out.print(text);
+
+            String choice = keyIn.next();
+            keyIn.nextLine();
+            if (choice.equalsIgnoreCase("n")) {
+                if (from + TOPICS_PER_PAGE < catalog.size()) {
+                    from += TOPICS_PER_PAGE;
+                }
+            } else if (choice.equalsIgnoreCase("p")) {
+                from = Math.max(0, from - TOPICS_PER_PAGE);
+            } else {
+                try {
+                    return Integer.parseInt(choice);
+                } catch (NumberFormatException e) {
+                    return -1;
                 }
             }
-            System.out.println("Done loading."); // Notify the user of successful loading
-        } catch (FileNotFoundException e) {
-            System.out.println("The file " + filename + " was not found.");
         }
     }
-    
+
+    /**
+     * Shows the words of a topic a page at a time, each page in one write, reading on from
+     * where the last page stopped.
+     * @param topic The topic to show.
+     */
+    private static void browseWords(Vocab topic) {
+        int total = topic.wordCount();
+        if (total <= WORDS_PER_PAGE) {
+            topic.displayWords();
+            return;
+        }
+        Iterator<String> cursor = topic.iterator();
+        int shown = 0;
+        while (true) {
+            StringBuilder text = new StringBuilder();
+            shown += Vocab.appendWords(text, cursor, WORDS_PER_PAGE, shown + 1);
+            if (!cursor.hasNext()) {
+                System.out.print(text);
+                return;
+            }
+            text.append("Shown ").append(shown).append(" of ").append(total)
+                    .append(" words. Press Enter for more, or 0 to stop: ");
+            System.out.print(text);
+            if (keyIn.nextLine().trim().equals("0")) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Turns the metrics on and publishes them through JMX.
+     * @param dumpSeconds How often to print them to standard error, or 0 never to.
+     */
+    private static void startMetrics(long dumpSeconds) {
+        VocabMetrics metrics = VocabMetrics.shared();
+        metrics.setEnabled(true);
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            System.out.println("The metrics could not be published through JMX: " + e.getMessage());
+        }
+        if (dumpSeconds > 0) {
+            metrics.startDumping(dumpSeconds, System.err);
+        }
+    }
+
+    /**
+     * Runs a batch of commands back to back, one per line, without any menus or prompts.
+     * Output goes through one large buffer and ends with the latency of each kind of command.
+     * <p>
+     * Fields are separated by tabs, or by spaces when a line has no tab, so words and topic
+     * names containing spaces need tabs. Topics are numbered from 1 as in the menus.
+     * Blank lines and lines starting with '#' are skipped. The commands are:
+     * load file, save file, topics, browse n, search word, prefix letters,
+     * add n word..., remove n word..., change n old new, append name word...,
+     * insert-before n name word..., insert-after n name word..., remove-topic n, and quit.
+     * @param source The command file, or - for standard input.
+     */
+    private static void runBatch(String source) {
+        PrintStream console = System.out;
+        // Everything printed while the batch runs, including load and save reports, is buffered
+        System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BATCH_BUFFER_SIZE),
+                false, StandardCharsets.UTF_8));
+        Map<String, CommandStats> stats = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        try (InputStream in = source.equals("-") ? System.in : new FileInputStream(source);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.indexOf('\t') >= 0 ? trimmed.split("\\s*\t\\s*") : trimmed.split("\\s+");
+                String command = fields[0].toLowerCase(Locale.ROOT);
+                if (command.equals("quit") || command.equals("exit")) {
+                    break;
+                }
+                long commandStart = System.nanoTime();
+                try {
+                    runCommand(command, fields);
+                } catch (NumberFormatException e) {
+                    System.out.println("Line " + lineNumber + ": not a topic number: " + e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Line " + lineNumber + ": " + e.getMessage());
+                } catch (UncheckedIOException e) {
+                    System.out.println("Line " + lineNumber + ": the edit could not be written to the journal: "
+                            + e.getCause().getMessage());
+                }
+                stats.computeIfAbsent(command, k -> new CommandStats()).record(System.nanoTime() - commandStart);
+            }
+        } catch (IOException e) {
+            System.out.println("The batch " + source + " could not be read: " + e.getMessage());
+        } finally {
+            printLatencies(stats, System.nanoTime() - start);
+            if (VocabMetrics.recording()) {
+                System.out.print(VocabMetrics.shared().dump());
+            }
+            System.out.flush();
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Runs one batch command.
+     * @param command The command name, in lower case.
+     * @param fields The fields of the line, the command name first.
+     * @throws IllegalArgumentException if the command or its fields are not valid.
+     */
+    private static void runCommand(String command, String[] fields) {
+        switch (command) {
+            case "load":
+                loadVocabFromFile(field(fields, 1));
+                break;
+            case "save":
+                saveVocabToFile(field(fields, 1));
+                break;
+            case "topics":
+                displayTopics();
+                break;
+            case "browse": {
+                Vocab topic = topicAt(fields);
+                System.out.println("Topic: " + topic.getTopic());
+                topic.displayWords();
+                break;
+            }
+            case "search": {
+                String word = field(fields, 1);
+                List<Vocab> topics = catalog.search(word);
+                StringBuilder found = new StringBuilder(word).append(':');
+                for (Vocab topic : topics) {
+                    found.append(' ').append(topic.getTopic()).append(';');
+                }
+                System.out.println(topics.isEmpty() ? word + ": not found" : found.toString());
+                break;
+            }
+            case "prefix":
+                for (String word : catalog.wordsStartingWith(field(fields, 1))) {
+                    System.out.println(word);
+                }
+                break;
+            case "add": {
+                topicAt(fields);
+                int index = Integer.parseInt(fields[1]) - 1;
+                for (int i = 2; i < fields.length; i++) {
+                    catalog.addWord(index, fields[i]);
+                }
+                break;
+            }
+            case "remove": {
+                Vocab topic = topicAt(fields);
+                int index = Integer.parseInt(fields[1]) - 1;
+                for (int i = 2; i < fields.length; i++) {
+                    if (!catalog.removeWord(index, fields[i])) {
+                        System.out.println("No word " + fields[i] + " in topic " + topic.getTopic());
+                    }
+                }
+                break;
+            }
+            case "change": {
+                Vocab topic = topicAt(fields);
+                int index = Integer.parseInt(fields[1]) - 1;
+                String oldWord = field(fields, 2);
+                String newWord = field(fields, 3);
+                if (!catalog.changeWord(index, oldWord, newWord)) {
+                    System.out.println("No word " + oldWord + " in topic " + topic.getTopic());
+                }
+                break;
+            }
+            case "append":
+                catalog.insertTopic(catalog.size(), newTopic(fields, 1));
+                break;
+            case "insert-before":
+                topicAt(fields);
+                catalog.insertTopic(Integer.parseInt(fields[1]) - 1, newTopic(fields, 2));
+                break;
+            case "insert-after":
+                topicAt(fields);
+                catalog.insertTopic(Integer.parseInt(fields[1]), newTopic(fields, 2));
+                break;
+            case "remove-topic":
+                topicAt(fields);
+                catalog.removeTopic(Integer.parseInt(fields[1]) - 1);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command: " + command);
+        }
+    }
+
+    /**
+     * Returns a field of a batch line.
+     * @param fields The fields of the line.
+     * @param index The position of the field.
+     * @return The field.
+     * @throws IllegalArgumentException if the line is too short.
+     */
+    private static String field(String[] fields, int index) {
+        if (index >= fields.length) {
+            throw new IllegalArgumentException(fields[0] + " needs " + index + " argument(s)");
+        }
+        return fields[index];
+    }
+
+    /**
+     * Looks up the topic numbered by the second field of a batch line.
+     * @param fields The fields of the line.
+     * @return The topic.
+     * @throws IllegalArgumentException if the field is missing or names no topic.
+     */
+    private static Vocab topicAt(String[] fields) {
+        int number = Integer.parseInt(field(fields, 1));
+        if (number < 1 || number > catalog.size()) {
+            throw new IllegalArgumentException("no topic " + number + " among " + catalog.size());
+        }
+        return catalog.topicAt(number - 1);
+    }
+
+    /**
+     * Builds a new topic from the fields of a batch line: its name, then its words.
+     * @param fields The fields of the line.
+     * @param from The position of the topic name.
+     * @return The new topic.
+     */
+    private static Vocab newTopic(String[] fields, int from) {
+        Vocab topic = new Vocab(field(fields, from));
+        for (int i = from + 1; i < fields.length; i++) {
+            topic.addWord(fields[i]);
+        }
+        return topic;
+    }
+
+    /**
+     * Prints how many times each kind of batch command ran and how long it took.
+     * @param stats The totals of each command, in the order first seen.
+     * @param elapsedNanos The duration of the whole batch.
+     */
+    private static void printLatencies(Map<String, CommandStats> stats, long elapsedNanos) {
+        System.out.println("---------------------------------------");
+        System.out.printf("%-14s %8s %10s %10s %10s%n", "Command", "Count", "Total ms", "Mean us", "Max us");
+        long count = 0;
+        for (Map.Entry<String, CommandStats> entry : stats.entrySet()) {
+            CommandStats stat = entry.getValue();
+            System.out.printf("%-14s %8d %10.1f %10.1f %10.1f%n", entry.getKey(), stat.count,
+                    stat.totalNanos / 1e6, stat.totalNanos / 1e3 / stat.count, stat.maxNanos / 1e3);
+            count += stat.count;
+        }
+        System.out.printf("%-14s %8d %10.1f%n", "all", count, elapsedNanos / 1e6);
+    }
+
+    // Latency totals of one kind of batch command
+    private static class CommandStats {
+        long count;      // Number of runs
+        long totalNanos; // Time spent in all runs
+        long maxNanos;   // Longest run
+
+        /**
+         * Adds one run to the totals.
+         * @param nanos The duration of the run.
+         */
+        void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+    }
+
     /**
      * Displays words starting with a specific letter from any topic
      */
@@ -407,27 +778,12 @@ public class VocabManagement {
 
         char startChar = input.charAt(0);
 
-        ArrayList<String> foundWords = new ArrayList<>();
-        
-        // Iterate over each Vocab object in the vocabulary list
-        for (int i = 0; i < vocab_List.size(); i++) {
-            Vocab currentVocab = vocab_List.getVocabByIndex(i);
-            if (currentVocab != null) {
-                ArrayList<String> words = currentVocab.getWords();
-                for (String word : words) {
-                    if (word.toLowerCase().startsWith(String.valueOf(startChar))) {  // Check if word starts with the specified letter
-                        foundWords.add(word);
-                    }
-                }
-            }
-        }
+        // The index keeps every word sorted, so this only visits the matching words
+        List<String> foundWords = catalog.wordsStartingWith(input);
 
         if (foundWords.isEmpty()) {
             System.out.println("No words found starting with the letter '" + startChar + "'.");
         } else {
-            // Sort the ArrayList
-            Collections.sort(foundWords);
-
             // Print the sorted list
             System.out.println("Words starting with '" + startChar + "':");
             for (String word : foundWords) {
@@ -438,28 +794,25 @@ public class VocabManagement {
 
     /**
      * Saves vocabulary data from the application to a file.
+     * Files ending in .vsnap are written as binary snapshots, others as text.
      */
     private static void saveToFile() {
         System.out.print("Enter the filename to save the vocabularies to: ");
         String filename = keyIn.nextLine().trim(); // Get the filename from the user
+        saveVocabToFile(filename);
+    }
 
-        File file = new File(filename);
-        try (PrintWriter writer = new PrintWriter(new File(filename))) {
-            // Iterate over each Vocab object in the vocabulary list
-            for (int i = 0; i < vocab_List.size(); i++) {
-                Vocab currentVocab = vocab_List.getVocabByIndex(i);
-                if (currentVocab != null) {
-                    // Write the topic to the file
-                    writer.println("#" + currentVocab.getTopic());
-                    ArrayList<String> words = currentVocab.getWords();
-                    for (String word : words) {
-                        writer.println(word); // Write each word under the topic
-                    }
-                    writer.println(); 
-                }
-            }
+    /**
+     * Saves the catalog to the specified file and reports how the save went.
+     * Files ending in .vsnap are written as binary snapshots, others as text.
+     * @param filename The name of the file to save to.
+     */
+    private static void saveVocabToFile(String filename) {
+        try {
+            VocabWriter writer = catalog.save(new File(filename));
             System.out.println("The Vocabularies have been saved successfully to '" + filename + "'");
-        } catch (FileNotFoundException e) {
+            System.out.println(writer.report());
+        } catch (IOException e) {
             System.out.println("The file '" + filename + "' could not be created or opened.");
         }
     }
@@ -0,0 +1,432 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times the catalog's operations so they can be watched while it runs.
+ * For each operation it keeps a latency histogram; for each topic list, a histogram of the
+ * nodes stepped through per lookup by position; and the bytes read by loads and written by saves.
+ * The metrics can be read through JMX and dumped as text every few seconds.
+ * <p>
+ * Recording is off until enabled. While it is off, start returns 0 without reading the
+ * clock and the other calls return after reading one flag, so the hooks cost next to nothing.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public final class VocabMetrics implements VocabMetricsMXBean {
+    /** Name under which the metrics are registered with the platform MBean server. */
+    public static final String OBJECT_NAME = "VocaLearn:type=VocabMetrics";
+
+    private static final VocabMetrics SHARED = new VocabMetrics();
+    private static volatile boolean enabled = false; // Whether the hooks record anything
+
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>(); // Nanoseconds per run of each operation
+    private final Map<String, Histogram> lookups = new ConcurrentHashMap<>();   // Nodes per lookup of each list
+    private final LongAdder bytesRead = new LongAdder();    // Bytes read by loads
+    private final LongAdder bytesWritten = new LongAdder(); // Bytes written by saves
+    private volatile long since = System.nanoTime();        // When recording started or was last reset
+    private ScheduledExecutorService dumper;                // Thread printing the periodic dump, or null
+
+    /**
+     * Constructs the metrics; there is only the shared instance.
+     */
+    private VocabMetrics() {
+    }
+
+    /**
+     * Returns the metrics shared by the whole program.
+     * @return The shared metrics.
+     */
+    public static VocabMetrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Checks if metrics are being recorded. This is the check every hook makes first.
+     * @return true if recording is on, false otherwise.
+     */
+    public static boolean recording() {
+        return enabled;
+    }
+
+    /**
+     * Marks the start of an operation.
+     * @return The current time in nanoseconds, or 0 if recording is off.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the end of an operation.
+     * @param operation The name of the operation.
+     * @param start The value start returned when the operation began; 0 records nothing.
+     */
+    public static void stop(String operation, long start) {
+        if (start != 0 && enabled) {
+            SHARED.latency(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds to the bytes read by loads.
+     * @param bytes The number of bytes a load read.
+     */
+    public static void read(long bytes) {
+        if (enabled) {
+            SHARED.bytesRead.add(bytes);
+        }
+    }
+
+    /**
+     * Adds to the bytes written by saves.
+     * @param bytes The number of bytes a save wrote.
+     */
+    public static void written(long bytes) {
+        if (enabled) {
+            SHARED.bytesWritten.add(bytes);
+        }
+    }
+
+    /**
+     * Returns the latency histogram of an operation, creating it the first time.
+     * @param operation The name of the operation.
+     * @return Its histogram, in nanoseconds.
+     */
+    public Histogram latency(String operation) {
+        return latencies.computeIfAbsent(operation, k -> new Histogram());
+    }
+
+    /**
+     * Returns the histogram of nodes per lookup of a topic list, creating it the first time.
+     * Lists keep the histogram in a field so a lookup does not search for it.
+     * @param list The name of the list.
+     * @return Its histogram, in nodes.
+     */
+    public Histogram lookups(String list) {
+        return lookups.computeIfAbsent(list, k -> new Histogram());
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, if they are not registered already.
+     * @throws JMException if the server refuses them.
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    /**
+     * Prints the dump every so often on a background thread, replacing any earlier schedule.
+     * @param periodSeconds The number of seconds between dumps.
+     * @param out Where to print the dumps.
+     */
+    public synchronized void startDumping(long periodSeconds, PrintStream out) {
+        stopDumping();
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "vocab-metrics-dump");
+            thread.setDaemon(true); // Never keeps the program alive
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic dump, if there is one.
+     */
+    public synchronized void stopDumping() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    /**
+     * Checks if metrics are being recorded.
+     * @return true if recording is on, false otherwise.
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. What was recorded so far is kept.
+     * @param enabled true to record, false to stop recording.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (enabled && !VocabMetrics.enabled) {
+            since = System.nanoTime();
+        }
+        VocabMetrics.enabled = enabled;
+    }
+
+    /**
+     * Returns how many times each operation ran.
+     * @return The count of each operation, by name.
+     */
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        return counts(latencies);
+    }
+
+    /**
+     * Returns the mean latency of each operation.
+     * @return The mean of each operation in microseconds, by name.
+     */
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+        return collect(latencies, h -> h.mean() / 1e3);
+    }
+
+    /**
+     * Returns the 99th percentile latency of each operation.
+     * @return The percentile of each operation in microseconds, by name.
+     */
+    @Override
+    public Map<String, Double> getP99LatencyMicros() {
+        return collect(latencies, h -> h.percentile(99) / 1e3);
+    }
+
+    /**
+     * Returns the longest run of each operation.
+     * @return The maximum of each operation in microseconds, by name.
+     */
+    @Override
+    public Map<String, Double> getMaxLatencyMicros() {
+        return collect(latencies, h -> h.max() / 1e3);
+    }
+
+    /**
+     * Returns how many lookups by position each topic list made.
+     * @return The count of each list, by name.
+     */
+    @Override
+    public Map<String, Long> getLookupCounts() {
+        return counts(lookups);
+    }
+
+    /**
+     * Returns the mean number of nodes stepped through per lookup of each topic list.
+     * @return The mean of each list, by name.
+     */
+    @Override
+    public Map<String, Double> getMeanNodesPerLookup() {
+        return collect(lookups, Histogram::mean);
+    }
+
+    /**
+     * Returns the number of bytes read by loads.
+     * @return The number of bytes.
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Returns the number of bytes written by saves.
+     * @return The number of bytes.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Returns all metrics as a table of text: the latency of each operation, the nodes per
+     * lookup of each topic list, and the bytes read and written.
+     * @return The text.
+     */
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Metrics %s, %.1f s since reset%n", enabled ? "on" : "off",
+                (System.nanoTime() - since) / 1e9));
+        text.append(String.format("%-14s %10s %10s %10s %10s %10s%n", "Operation", "Count", "Mean us", "p50 us", "p99 us", "Max us"));
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(latencies).entrySet()) {
+            Histogram h = entry.getValue();
+            text.append(String.format("%-14s %10d %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), h.count(),
+                    h.mean() / 1e3, h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.max() / 1e3));
+        }
+        text.append(String.format("%-14s %10s %10s %10s %10s %10s%n", "Lookup", "Count", "Mean", "p50", "p99", "Max"));
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(lookups).entrySet()) {
+            Histogram h = entry.getValue();
+            if (h.count() == 0) {
+                continue; // A list that is loaded but not in use
+            }
+            text.append(String.format("%-14s %10d %10.1f %10d %10d %10d%n", entry.getKey(), h.count(),
+                    h.mean(), h.percentile(50), h.percentile(99), h.max()));
+        }
+        text.append(String.format("Bytes read %d, bytes written %d%n", bytesRead.sum(), bytesWritten.sum()));
+        return text.toString();
+    }
+
+    /**
+     * Clears everything recorded so far.
+     */
+    @Override
+    public void reset() {
+        // Histograms are cleared in place, since the lists hold on to theirs
+        latencies.values().forEach(Histogram::reset);
+        lookups.values().forEach(Histogram::reset);
+        bytesRead.reset();
+        bytesWritten.reset();
+        since = System.nanoTime();
+    }
+
+    /**
+     * Maps each histogram to its count, in name order.
+     * @param histograms The histograms by name.
+     * @return The counts by name.
+     */
+    private static Map<String, Long> counts(Map<String, Histogram> histograms) {
+        Map<String, Long> counts = new TreeMap<>();
+        histograms.forEach((name, h) -> counts.put(name, h.count()));
+        return counts;
+    }
+
+    /**
+     * Maps each histogram to one of its figures, in name order.
+     * @param histograms The histograms by name.
+     * @param figure The figure to take from each.
+     * @return The figures by name.
+     */
+    private static Map<String, Double> collect(Map<String, Histogram> histograms, ToDoubleFunction<Histogram> figure) {
+        Map<String, Double> figures = new TreeMap<>();
+        histograms.forEach((name, h) -> figures.put(name, figure.applyAsDouble(h)));
+        return figures;
+    }
+
+    /**
+     * Histogram of non-negative values laid out like an HdrHistogram: values below 32 have a
+     * bucket each, and every power of two above that is split into 32 buckets, so a value is
+     * known to within about 3% whatever its size. Recording is lock free and never allocates.
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 5;                  // Bits of a value kept below its leading bit
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;   // Buckets per power of two
+        private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Values seen in each bucket
+        private final LongAdder total = new LongAdder();                     // Sum of the values seen
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0); // Largest value seen
+
+        /**
+         * Adds a value.
+         * @param value The value; negative values count as 0.
+         */
+        public void record(long value) {
+            value = Math.max(value, 0);
+            counts.incrementAndGet(bucketOf(value));
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        /**
+         * Returns the number of values recorded.
+         * @return The count.
+         */
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the mean of the values recorded.
+         * @return The mean, or 0 if there are none.
+         */
+        public double mean() {
+            long count = count();
+            return count == 0 ? 0 : (double) total.sum() / count;
+        }
+
+        /**
+         * Returns the largest value recorded.
+         * @return The maximum, or 0 if there are none.
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Returns the value that the given percentage of the values are at or below.
+         * @param percent The percentage, from 0 to 100.
+         * @return The highest value of the bucket the percentile falls in, or 0 if there are no values.
+         */
+        public long percentile(double percent) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(highestIn(i), max());
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Clears the histogram.
+         */
+        public void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            total.reset();
+            max.reset();
+        }
+
+        /**
+         * Finds the bucket of a value.
+         * @param value The value, not negative.
+         * @return The index of its bucket.
+         */
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Returns the highest value that falls in a bucket.
+         * @param bucket The index of the bucket.
+         * @return The value.
+         */
+        private static long highestIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+            long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            long lowest = (1L << exponent) | (sub << (exponent - SUB_BITS));
+            return lowest + (1L << (exponent - SUB_BITS)) - 1;
+        }
+    }
+}
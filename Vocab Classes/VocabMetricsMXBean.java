@@ -0,0 +1,81 @@
+import java.util.Map;
+
+/**
+ * Management interface of VocabMetrics, as seen through JMX (for example in JConsole under
+ * VocaLearn:type=VocabMetrics). Latencies are in microseconds and maps are keyed by the name
+ * of the operation or of the list whose lookups were measured.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public interface VocabMetricsMXBean {
+    /**
+     * Checks if metrics are being recorded.
+     * @return true if recording is on, false otherwise.
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording on or off. What was recorded so far is kept.
+     * @param enabled true to record, false to stop recording.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns how many times each operation ran.
+     * @return The count of each operation.
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * Returns the mean latency of each operation.
+     * @return The mean of each operation, in microseconds.
+     */
+    Map<String, Double> getMeanLatencyMicros();
+
+    /**
+     * Returns the latency that 99% of the runs of each operation stayed within.
+     * @return The 99th percentile of each operation, in microseconds.
+     */
+    Map<String, Double> getP99LatencyMicros();
+
+    /**
+     * Returns the longest run of each operation.
+     * @return The maximum of each operation, in microseconds.
+     */
+    Map<String, Double> getMaxLatencyMicros();
+
+    /**
+     * Returns how many lookups by position each topic list made.
+     * @return The count of lookups of each list.
+     */
+    Map<String, Long> getLookupCounts();
+
+    /**
+     * Returns the mean number of nodes each topic list stepped through per lookup.
+     * @return The mean of each list.
+     */
+    Map<String, Double> getMeanNodesPerLookup();
+
+    /**
+     * Returns the number of bytes read by loads.
+     * @return The number of bytes.
+     */
+    long getBytesRead();
+
+    /**
+     * Returns the number of bytes written by saves.
+     * @return The number of bytes.
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns all metrics as a table of text.
+     * @return The text, one line per operation and per list.
+     */
+    String dump();
+
+    /**
+     * Clears everything recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,393 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+
+/**
+ * Embedded HTTP server answering vocabulary lookups for many clients at once, with nothing
+ * but the JDK's com.sun.net.httpserver. Every answer is plain UTF-8 text, one item per line:
+ * <ul>
+ * <li>GET /topics lists the topics as "number TAB name", numbered from 1 as in the menus.</li>
+ * <li>GET /topics/n lists the words of topic n, after a first line with its name.</li>
+ * <li>GET /search?word=w lists the names of the topics containing w.</li>
+ * <li>GET /prefix?prefix=p lists the words starting with p, ignoring case.</li>
+ * </ul>
+ * Answers stop after DEFAULT_LIMIT lines, or after the number given as limit=n in the
+ * query; the X-Total-Count header says how many there were in all.
+ * Requests read the catalog's latest snapshot, so they take no lock and never wait for
+ * edits made through the same ConcurrentCatalog. Each request runs on its own virtual
+ * thread when the JDK has them (Java 21 and later), and on a fixed pool of threads otherwise.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabServer {
+    /** Port the server listens on unless another is given. */
+    public static final int DEFAULT_PORT = 8080;
+    /** Lines in an answer unless the request gives another limit. */
+    public static final int DEFAULT_LIMIT = 1000;
+    private static final int POOL_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int BACKLOG = 1024; // Connections the OS may queue before accepting them
+
+    static {
+        // The JDK server writes headers and body separately; with Nagle's algorithm on, every
+        // kept-alive request then waits about 40 ms for the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ConcurrentCatalog catalog; // The catalog being served
+    private final HttpServer server;         // The JDK server
+    private final ExecutorService executor;  // Threads running the requests
+    private final String threading;          // What the executor runs requests on, for reports
+
+    /**
+     * Constructs a server for a catalog, listening on localhost. It answers nothing until started.
+     * @param catalog The catalog to serve.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException if the port cannot be opened.
+     */
+    public VocabServer(ConcurrentCatalog catalog, int port) throws IOException {
+        this.catalog = catalog;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            executor = virtual;
+            threading = "virtual threads";
+        } else {
+            executor = Executors.newFixedThreadPool(POOL_THREADS, task -> {
+                Thread thread = new Thread(task, "vocab-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+            threading = POOL_THREADS + " platform threads";
+        }
+        server.setExecutor(executor);
+        server.createContext("/topics", this::handleTopics);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/prefix", this::handlePrefix);
+        server.createContext("/", exchange -> respond(exchange, 404, "Not found\n"));
+    }
+
+    /**
+     * Starts a server for the topics in a file.
+     * @param args The file to serve, then optionally --port=n, --loader=mapped or --loader=parallel,
+     *             --topics=skiplist, and --metrics to record metrics and publish them through JMX.
+     * @throws IOException if the file cannot be read or the port cannot be opened.
+     */
+    public static void main(String[] args) throws IOException {
+        String filename = null;
+        int port = DEFAULT_PORT;
+        String loaderMode = "text";
+        TopicList<Vocab> topics = new DoublyLinkedList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.equals("--loader=mapped") || arg.equals("--loader=parallel")) {
+                loaderMode = arg.substring("--loader=".length());
+            } else if (arg.equals("--topics=skiplist")) {
+                topics = new IndexableSkipList<>();
+            } else if (arg.equals("--metrics")) {
+                VocabMetrics.shared().setEnabled(true);
+                try {
+                    VocabMetrics.shared().register();
+                } catch (JMException e) {
+                    System.out.println("The metrics could not be published through JMX: " + e.getMessage());
+                }
+            } else if (!arg.startsWith("--") && filename == null) {
+                filename = arg;
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (filename == null) {
+            System.out.println("Usage: java VocabServer file [--port=n] [--loader=mapped|parallel] [--topics=skiplist] [--metrics]");
+            return;
+        }
+
+        File file = new File(filename);
+        VocabLoader loader = new VocabLoader();
+        if (filename.endsWith(VocabWriter.SNAPSHOT_EXTENSION)) {
+            loader.loadSnapshot(file, topics);
+        } else if (loaderMode.equals("parallel")) {
+            loader.loadParallel(file, topics);
+        } else if (loaderMode.equals("mapped")) {
+            loader.loadMapped(file, topics);
+        } else {
+            loader.loadText(file, topics);
+        }
+        System.out.println(loader.report());
+        VocabServer server = new VocabServer(new ConcurrentCatalog(topics), port);
+        server.start();
+        System.out.println("Serving " + topics.size() + " topics at http://localhost:" + server.getPort()
+                + "/ on " + server.getThreading());
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops answering requests, letting those under way finish for up to a second.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on, which is useful after asking for any free port.
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns what the requests run on.
+     * @return "virtual threads", or the size of the thread pool.
+     */
+    public String getThreading() {
+        return threading;
+    }
+
+    /**
+     * Answers GET /topics and GET /topics/n.
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handleTopics(HttpExchange exchange) throws IOException {
+        int limit = checkGet(exchange) ? limit(exchange) : -1;
+        if (limit < 0) {
+            return;
+        }
+        long start = VocabMetrics.start();
+        CatalogSnapshot snapshot = catalog.snapshot();
+        String path = exchange.getRequestURI().getPath();
+        StringBuilder body = new StringBuilder();
+        if (path.equals("/topics") || path.equals("/topics/")) {
+            int number = 1;
+            for (CatalogSnapshot.Topic topic : snapshot) {
+                if (number > limit) {
+                    break;
+                }
+                body.append(number++).append('\t').append(topic.getTopic()).append('\n');
+            }
+            VocabMetrics.stop("http topics", start);
+            respond(exchange, snapshot.size(), body);
+            return;
+        }
+        CatalogSnapshot.Topic topic = null;
+        try {
+            if (path.startsWith("/topics/")) {
+                topic = snapshot.topicAt(Integer.parseInt(path.substring("/topics/".length())) - 1);
+            }
+        } catch (NumberFormatException e) {
+            // Not a topic number, answered below like a missing topic
+        }
+        if (topic == null) {
+            respond(exchange, 404, "No such topic\n");
+            return;
+        }
+        body.append(topic.getTopic()).append('\n');
+        appendLines(body, topic, limit);
+        VocabMetrics.stop("http topic", start);
+        respond(exchange, topic.wordCount(), body);
+    }
+
+    /**
+     * Answers GET /search?word=w.
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        String word = checkGet(exchange) ? parameter(exchange, "word") : null;
+        int limit = word != null ? limit(exchange) : -1;
+        if (limit < 0) {
+            return;
+        }
+        long start = VocabMetrics.start();
+        List<CatalogSnapshot.Topic> found = catalog.snapshot().topicsContaining(word);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < found.size() && i < limit; i++) {
+            body.append(found.get(i).getTopic()).append('\n');
+        }
+        VocabMetrics.stop("http search", start);
+        respond(exchange, found.size(), body);
+    }
+
+    /**
+     * Answers GET /prefix?prefix=p.
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handlePrefix(HttpExchange exchange) throws IOException {
+        String prefix = checkGet(exchange) ? parameter(exchange, "prefix") : null;
+        int limit = prefix != null ? limit(exchange) : -1;
+        if (limit < 0) {
+            return;
+        }
+        long start = VocabMetrics.start();
+        // Only the words answered are listed; the rest are just counted
+        CatalogSnapshot snapshot = catalog.snapshot();
+        StringBuilder body = new StringBuilder();
+        appendLines(body, snapshot.wordsStartingWith(prefix, limit), limit);
+        int total = snapshot.countWordsStartingWith(prefix);
+        VocabMetrics.stop("http prefix", start);
+        respond(exchange, total, body);
+    }
+
+    /**
+     * Appends items as lines, up to a limit.
+     * @param body The text to append to.
+     * @param items The items.
+     * @param limit The most lines to append.
+     */
+    private static void appendLines(StringBuilder body, Iterable<String> items, int limit) {
+        int lines = 0;
+        for (String item : items) {
+            if (lines++ == limit) {
+                return;
+            }
+            body.append(item).append('\n');
+        }
+    }
+
+    /**
+     * Refuses any method but GET.
+     * @param exchange The request and its response.
+     * @return true if the request is a GET, false if it has been refused.
+     * @throws IOException if the refusal cannot be sent.
+     */
+    private static boolean checkGet(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("GET")) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET");
+        respond(exchange, 405, "Only GET is supported\n");
+        return false;
+    }
+
+    /**
+     * Reads a query parameter, refusing the request if it is missing.
+     * @param exchange The request and its response.
+     * @param name The name of the parameter.
+     * @return The decoded value, or null if the request has been refused.
+     * @throws IOException if the refusal cannot be sent.
+     */
+    private static String parameter(HttpExchange exchange, String name) throws IOException {
+        String value = query(exchange, name);
+        if (value == null) {
+            respond(exchange, 400, "Missing parameter " + name + "\n");
+        }
+        return value;
+    }
+
+    /**
+     * Reads the optional limit parameter, the most lines an answer may have.
+     * @param exchange The request and its response.
+     * @return The limit, DEFAULT_LIMIT if the request has none, or -1 if the request has been refused.
+     * @throws IOException if the refusal cannot be sent.
+     */
+    private static int limit(HttpExchange exchange) throws IOException {
+        String value = query(exchange, "limit");
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit >= 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // Refused below
+        }
+        respond(exchange, 400, "Not a limit: " + value + "\n");
+        return -1;
+    }
+
+    /**
+     * Finds a query parameter.
+     * @param exchange The request.
+     * @param name The name of the parameter.
+     * @return The decoded value, or null if the query has no such parameter or it is badly encoded.
+     */
+    private static String query(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                try {
+                    return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends a successful list, with the number of items there are in all in an
+     * X-Total-Count header, since the list may have been cut at the limit.
+     * @param exchange The request and its response.
+     * @param total The number of items before the limit.
+     * @param body The lines of the response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private static void respond(HttpExchange exchange, int total, StringBuilder body) throws IOException {
+        exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(total));
+        respond(exchange, 200, body.toString());
+    }
+
+    /**
+     * Sends a response and closes the exchange.
+     * @param exchange The request and its response.
+     * @param status The HTTP status code.
+     * @param body The text of the response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread, if the JDK has them.
+     * It is looked up by name so the server still compiles and runs on older JDKs.
+     * @return The executor, or null before Java 21.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress test for ConcurrentCatalog, runnable with plain javac and java:
+ * <pre>
+ *   java VocabStress [--topics=N] [--words=N] [--editors=N] [--readers=N] [--seconds=N] [--list=skiplist]
+ * </pre>
+ * Editor threads add, remove and change words and insert and remove topics at random for
+ * the given number of seconds, while reader threads check that every snapshot they take is
+ * consistent with itself. Afterwards the catalog must pass verify, and its sizes, its word
+ * index and its latest snapshot must match an index and a snapshot rebuilt from its topics.
+ * Words are drawn from a small pool, so removals and changes usually find their word and
+ * many topics share each word. Prints OK, or the first problem found and exits with status 1.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabStress {
+    private static final long SEED = 42;           // Seed of the starting catalog
+    private static final int LIMIT = 10;           // Limit of the prefix listings checked by readers
+
+    private int topicCount = 200;      // Topics at the start, and the number editors keep to
+    private int wordsPerTopic = 20;    // Words in each starting or inserted topic
+    private int editors = 4;           // Threads editing the catalog
+    private int readers = 2;           // Threads checking snapshots
+    private int seconds = 10;          // Seconds of editing
+    private boolean skipList;          // Whether the topics are kept in an IndexableSkipList
+
+    private ConcurrentCatalog catalog;  // The catalog under test
+    private String[] pool;              // Words that edits draw from
+    private final String[] kinds = {"add", "remove", "change", "insert", "removeTopic"}; // Edits, in report order
+    private final int[] weights = {30, 30, 25, 8, 7};                                 // Percentage of each edit
+    private final LongAdder[] done = new LongAdder[kinds.length]; // Edits of each kind that changed the catalog
+    private final LongAdder snapshotsRead = new LongAdder();      // Snapshots checked by readers
+    private final AtomicReference<String> problem = new AtomicReference<>(); // First problem found
+
+    /**
+     * Runs the stress test.
+     * @param args The options described in the class comment.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        VocabStress stress = new VocabStress();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--topics=")) {
+                stress.topicCount = Integer.parseInt(value);
+            } else if (arg.startsWith("--words=")) {
+                stress.wordsPerTopic = Integer.parseInt(value);
+            } else if (arg.startsWith("--editors=")) {
+                stress.editors = Integer.parseInt(value);
+            } else if (arg.startsWith("--readers=")) {
+                stress.readers = Integer.parseInt(value);
+            } else if (arg.startsWith("--seconds=")) {
+                stress.seconds = Integer.parseInt(value);
+            } else if (arg.equals("--list=skiplist")) {
+                stress.skipList = true;
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        String found = stress.run();
+        if (found != null) {
+            System.out.println("FAILED: " + found);
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Builds the catalog, runs the editors and readers until the time is up, then checks the result.
+     * @return null if no problem was found, otherwise a description of the first one.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    private String run() throws InterruptedException {
+        pool = new String[Math.max(16, wordsPerTopic * 4)];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = "w" + i;
+        }
+        Random random = new Random(SEED);
+        TopicList<Vocab> topics = skipList ? new IndexableSkipList<>() : new DoublyLinkedList<>();
+        for (int t = 0; t < topicCount; t++) {
+            topics.addLast(newTopic("Topic " + t, random));
+        }
+        catalog = new ConcurrentCatalog(topics);
+        for (int i = 0; i < done.length; i++) {
+            done[i] = new LongAdder();
+        }
+        System.out.printf("Catalog: %d topics x %d words in a %s; %d editors, %d readers, %d s%n",
+                topicCount, wordsPerTopic, skipList ? "skip list" : "linked list", editors, readers, seconds);
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int e = 0; e < editors; e++) {
+            threads.add(new Thread(() -> guard(() -> edit(end)), "editor-" + e));
+        }
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> guard(() -> read(end)), "reader-" + r));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report();
+        if (problem.get() != null) {
+            return problem.get();
+        }
+        return check();
+    }
+
+    /**
+     * Runs part of the test, recording any exception it throws as the problem.
+     * @param part The part to run.
+     */
+    private void guard(Runnable part) {
+        try {
+            part.run();
+        } catch (RuntimeException e) {
+            problem.compareAndSet(null, Thread.currentThread().getName() + " threw " + e);
+        }
+    }
+
+    /**
+     * Makes random edits until the end time or until a problem is found.
+     * @param end When to stop, in System.nanoTime() terms.
+     */
+    private void edit(long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end && problem.get() == null) {
+            int kind = pickKind(random.nextInt(100));
+            int size = catalog.size();
+            boolean changed;
+            if (kind == 3 || kind == 4) {
+                // Keep the catalog near its starting size, whichever structural edit was picked
+                if (size <= topicCount) {
+                    changed = insertTopic(random.nextInt(size + 1), random);
+                    kind = 3;
+                } else {
+                    changed = catalog.removeAt(random.nextInt(size)) != null;
+                    kind = 4;
+                }
+            } else {
+                Vocab vocab = size == 0 ? null : catalog.topicAt(random.nextInt(size));
+                if (vocab == null) {
+                    continue; // The topic was removed or the catalog shrank meanwhile
+                }
+                String word = pool[random.nextInt(pool.length)];
+                if (kind == 0) {
+                    changed = catalog.addWord(vocab, word);
+                } else if (kind == 1) {
+                    changed = catalog.removeWord(vocab, word);
+                } else {
+                    changed = catalog.changeWord(vocab, word, pool[random.nextInt(pool.length)]);
+                }
+            }
+            if (changed) {
+                done[kind].increment();
+            }
+        }
+    }
+
+    /**
+     * Inserts a new topic, unless the catalog shrank below the position meanwhile.
+     * @param position The index to insert at.
+     * @param random The source of the new topic's words.
+     * @return true if the topic is inserted, false otherwise.
+     */
+    private boolean insertTopic(int position, Random random) {
+        try {
+            catalog.insertBefore(position, newTopic("Inserted " + random.nextInt(), random));
+            return true;
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks snapshots until the end time or until a problem is found.
+     * @param end When to stop, in System.nanoTime() terms.
+     */
+    private void read(long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long lastVersion = -1;
+        while (System.nanoTime() < end && problem.get() == null) {
+            CatalogSnapshot snapshot = catalog.snapshot();
+            if (snapshot.version() < lastVersion) {
+                problem.compareAndSet(null, "Snapshot version went back from " + lastVersion + " to " + snapshot.version());
+            }
+            lastVersion = snapshot.version();
+            String found = checkSnapshot(snapshot, pool[random.nextInt(pool.length)]);
+            if (found != null) {
+                problem.compareAndSet(null, found);
+            }
+            snapshotsRead.increment();
+        }
+    }
+
+    /**
+     * Checks that a snapshot agrees with itself: its size, word counts, word index and prefix counts.
+     * @param snapshot The snapshot.
+     * @param word A word to look up.
+     * @return null if the snapshot is consistent, otherwise a description of the first problem.
+     */
+    private static String checkSnapshot(CatalogSnapshot snapshot, String word) {
+        int topics = 0;
+        long words = 0;
+        int containing = 0;
+        for (CatalogSnapshot.Topic topic : snapshot) {
+            topics++;
+            words += topic.wordCount();
+            if (topic.containsWord(word)) {
+                containing++;
+            }
+        }
+        if (topics != snapshot.size()) {
+            return "Snapshot " + snapshot.version() + " has " + topics + " topics but size is " + snapshot.size();
+        }
+        if (words != snapshot.countWordsStartingWith("")) {
+            return "Snapshot " + snapshot.version() + " has " + words + " words but counts "
+                    + snapshot.countWordsStartingWith("");
+        }
+        if (snapshot.topicsContaining(word).size() != containing) {
+            return "Snapshot " + snapshot.version() + " indexes " + snapshot.topicsContaining(word).size()
+                    + " topics under " + word + " but " + containing + " contain it";
+        }
+        int matches = snapshot.countWordsStartingWith(word);
+        if (snapshot.wordsStartingWith(word, LIMIT).size() != Math.min(LIMIT, matches)) {
+            return "Snapshot " + snapshot.version() + " lists the wrong number of words starting with " + word;
+        }
+        return null;
+    }
+
+    /**
+     * Checks the catalog once every thread has stopped: verify must pass, and the sizes, the
+     * word index and the snapshot must match those rebuilt from the topics.
+     * @return null if the catalog is consistent, otherwise a description of the first problem.
+     */
+    private String check() {
+        String verified = catalog.verify();
+        if (verified != null) {
+            return "verify: " + verified;
+        }
+        ArrayList<Vocab> topics = new ArrayList<>();
+        catalog.forEachTopic(topics::add);
+        CatalogSnapshot snapshot = catalog.snapshot();
+        if (topics.size() != catalog.size() || topics.size() != snapshot.size()) {
+            return "Walked " + topics.size() + " topics, size is " + catalog.size() + ", snapshot has " + snapshot.size();
+        }
+
+        WordIndex rebuilt = new WordIndex();
+        ArrayList<Long> ids = new ArrayList<>(topics.size());
+        LinkedHashSet<String> words = new LinkedHashSet<>();
+        for (Vocab vocab : topics) {
+            rebuilt.addTopic(vocab);
+            ids.add((long) ids.size());
+            words.addAll(vocab.getWords());
+        }
+        for (String word : words) {
+            Set<Vocab> indexed = Collections.newSetFromMap(new IdentityHashMap<>());
+            indexed.addAll(catalog.topicsContaining(word));
+            Set<Vocab> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+            expected.addAll(rebuilt.topicsContaining(word));
+            if (!indexed.equals(expected)) {
+                return "The index lists " + indexed.size() + " topics under " + word + " but " + expected.size()
+                        + " contain it";
+            }
+        }
+        if (!catalog.wordsStartingWith("").equals(rebuilt.wordsStartingWith(""))) {
+            return "The sorted words differ from a rebuilt index";
+        }
+
+        CatalogSnapshot fresh = CatalogSnapshot.of(topics, ids);
+        if (!snapshot.wordsStartingWith("").equals(fresh.wordsStartingWith(""))
+                || snapshot.countWordsStartingWith("") != fresh.countWordsStartingWith("")) {
+            return "The snapshot's sorted words differ from a rebuilt snapshot";
+        }
+        for (String word : words) {
+            if (snapshot.topicsContaining(word).size() != fresh.topicsContaining(word).size()) {
+                return "The snapshot lists the wrong number of topics under " + word;
+            }
+        }
+        System.out.printf("Checked %d topics and %d distinct words against a rebuild%n", topics.size(), words.size());
+        return null;
+    }
+
+    /**
+     * Prints how many edits of each kind changed the catalog, and how many snapshots were checked.
+     */
+    private void report() {
+        StringBuilder line = new StringBuilder("Edits:");
+        for (int i = 0; i < kinds.length; i++) {
+            line.append(String.format(" %s %,d", kinds[i], done[i].sum()));
+        }
+        System.out.println(line);
+        System.out.printf("Snapshots checked: %,d%n", snapshotsRead.sum());
+    }
+
+    /**
+     * Builds a topic of words from the pool.
+     * @param name The name of the topic.
+     * @param random The source of the words.
+     * @return The topic.
+     */
+    private Vocab newTopic(String name, Random random) {
+        Vocab vocab = new Vocab(name);
+        for (int w = 0; w < wordsPerTopic; w++) {
+            vocab.addWord(pool[random.nextInt(pool.length)]);
+        }
+        return vocab;
+    }
+
+    /**
+     * Picks the kind of edit for a number from 0 to 99, by the weights.
+     * @param roll The number.
+     * @return The index of the kind.
+     */
+    private int pickKind(int roll) {
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes topics to vocabulary files in the #topic / word format read by VocabLoader,
+ * or to binary snapshots, and records how much it wrote and how long it took.
+ * <p>
+ * A snapshot (version 1) is big-endian and holds, in order: the magic number and version;
+ * the number of strings, topics and word entries; the string table, each distinct topic name
+ * and word once as a byte length followed by UTF-8 bytes; then one record per topic with its
+ * name's string index, its word count and the string index of each word.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class VocabWriter {
+    private static final int BUFFER_SIZE = 1 << 20; // Characters buffered before each write to the file
+    static final int SNAPSHOT_MAGIC = 0x564F4342;   // "VOCB"
+    static final int SNAPSHOT_VERSION = 1;
+    static final String SNAPSHOT_EXTENSION = ".vsnap"; // File name ending that selects the snapshot format
+
+    private long topicsWritten; // Topics written by the last save
+    private long wordsWritten;  // Words written by the last save
+    private long bytesWritten;  // Bytes written by the last save
+    private long elapsedNanos;  // Duration of the last save
+
+    /**
+     * Saves topics to a text file in one pass. The topics are written to a temporary file
+     * next to the target, forced to disk and then renamed over the target, so a crash or
+     * error part way through leaves any previous file intact.
+     * @param file The file to write.
+     * @param topics The topics to save, in order.
+     * @throws IOException if the file cannot be written or replaced.
+     */
+    public void saveText(File file, Iterable<? extends TopicView> topics) throws IOException {
+        long start = System.nanoTime();
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = createTempFile(target);
+        String newLine = System.lineSeparator();
+        long topicCount = 0;
+        long wordCount = 0;
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 BufferedWriter writer = new BufferedWriter(
+                         new OutputStreamWriter(Channels.newOutputStream(out), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                for (TopicView vocab : topics) {
+                    writer.write('#');
+                    writer.write(vocab.getTopic());
+                    writer.write(newLine);
+                    for (String word : vocab) {
+                        writer.write(word); // Write each word under the topic
+                        writer.write(newLine);
+                        wordCount++;
+                    }
+                    writer.write(newLine);
+                    topicCount++;
+                }
+                writer.flush();
+                out.force(true);
+            }
+            bytesWritten = Files.size(temp);
+            replace(temp, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        elapsedNanos = System.nanoTime() - start;
+        topicsWritten = topicCount;
+        wordsWritten = wordCount;
+        VocabMetrics.written(bytesWritten);
+    }
+
+    /**
+     * Saves topics to a binary snapshot, replacing the file in the same way as saveText.
+     * The snapshot keeps every topic name and word exactly, including text that the
+     * #topic / word format cannot hold, such as blank words or words starting with '#'.
+     * @param file The file to write.
+     * @param topics The topics to save, in order.
+     * @throws IOException if the file cannot be written or replaced.
+     */
+    public void saveSnapshot(File file, Iterable<? extends TopicView> topics) throws IOException {
+        long start = System.nanoTime();
+
+        // First pass: give each distinct string an index in the string table
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        long topicCount = 0;
+        long wordCount = 0;
+        for (TopicView vocab : topics) {
+            addString(vocab.getTopic(), ids, strings);
+            for (String word : vocab) {
+                addString(word, ids, strings);
+                wordCount++;
+            }
+            topicCount++;
+        }
+        if (topicCount > Integer.MAX_VALUE) {
+            throw new IOException("Too many topics for a snapshot: " + topicCount);
+        }
+
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = createTempFile(target);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), BUFFER_SIZE))) {
+                data.writeInt(SNAPSHOT_MAGIC);
+                data.writeInt(SNAPSHOT_VERSION);
+                data.writeInt(strings.size());
+                data.writeInt((int) topicCount);
+                data.writeLong(wordCount);
+                for (String string : strings) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    data.writeInt(bytes.length);
+                    data.write(bytes);
+                }
+                // Second pass: the topic records
+                for (TopicView vocab : topics) {
+                    data.writeInt(ids.get(vocab.getTopic()));
+                    data.writeInt(vocab.wordCount());
+                    for (String word : vocab) {
+                        data.writeInt(ids.get(word));
+                    }
+                }
+                data.flush();
+                out.force(true);
+            }
+            bytesWritten = Files.size(temp);
+            replace(temp, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        elapsedNanos = System.nanoTime() - start;
+        topicsWritten = topicCount;
+        wordsWritten = wordCount;
+        VocabMetrics.written(bytesWritten);
+    }
+
+    /**
+     * Returns the number of topics written by the last save.
+     * @return The number of topics.
+     */
+    public long getTopicsWritten() {
+        return topicsWritten;
+    }
+
+    /**
+     * Returns the number of words written by the last save.
+     * @return The number of words.
+     */
+    public long getWordsWritten() {
+        return wordsWritten;
+    }
+
+    /**
+     * Returns the number of bytes written by the last save.
+     * @return The number of bytes.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the duration of the last save.
+     * @return The duration in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Describes the throughput of the last save.
+     * @return A line such as "Wrote 5 topics, 380 words (3542 bytes) in 3 ms: 1.2 MB/sec".
+     */
+    public String report() {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("Wrote %d topics, %d words (%d bytes) in %d ms: %.1f MB/sec",
+                topicsWritten, wordsWritten, bytesWritten, elapsedNanos / 1_000_000, bytesWritten / seconds / 1e6);
+    }
+
+    /**
+     * Gives a string the next index in a string table, unless it already has one.
+     * @param string The string.
+     * @param ids The index of each string in the table.
+     * @param strings The string table.
+     */
+    private static void addString(String string, HashMap<String, Integer> ids, ArrayList<String> strings) {
+        if (ids.putIfAbsent(string, strings.size()) == null) {
+            strings.add(string);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to the target. It gets the same default
+     * permissions as any new file, unlike Files.createTempFile, which makes it owner-only
+     * and so would turn the saved file owner-only once renamed. The file is created
+     * with CREATE_NEW, so a file that appears under the same name is never reused or
+     * overwritten; another name is tried instead.
+     * @param target The file being replaced.
+     * @return The new, empty file.
+     * @throws IOException if the file cannot be created.
+     */
+    private static Path createTempFile(Path target) throws IOException {
+        while (true) {
+            Path temp = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".tmp");
+            try {
+                Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+                return temp;
+            } catch (FileAlreadyExistsException e) {
+                // Taken, by another save or another program; try the next name
+            }
+        }
+    }
+
+    /**
+     * Renames a finished file over the target, atomically where the file system allows it.
+     * @param source The finished file.
+     * @param target The file to replace.
+     * @throws IOException if the file cannot be moved.
+     */
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Catalog-wide dictionary of words. Every distinct word is kept once and given a
+ * stable int id, so topics holding the same word share one String, or can store
+ * just the id. Safe to use from several threads, as the parallel loader does.
+ * <p>
+ * A dictionary only grows, so it is scoped to one catalog: each word store keeps the
+ * dictionary that was shared when the store was created, and the catalog shares a new
+ * one for every load and whenever words edited out of the catalog outnumber the live ones.
+ * An old dictionary is freed with the last word store using it.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class WordDictionary {
+    private static final int STALE_SLACK = 4096; // Words edited away that a dictionary may keep beyond the live ones
+    private static volatile WordDictionary shared = new WordDictionary(); // Joined by new word stores
+
+    // Inner class Entry pairs a word with its id
+    private static class Entry {
+        final String word; // The canonical copy of the word
+        final int id;      // Index of the word in the table
+
+        /**
+         * Constructs an entry.
+         * @param word The canonical copy of the word.
+         * @param id The id of the word.
+         */
+        Entry(String word, int id) {
+            this.word = word;
+            this.id = id;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile String[] table = new String[1024]; // Words by id; grown under the lock
+    private int size;                                    // Number of words; guarded by the lock
+    private final AtomicLong duplicates = new AtomicLong(); // Lookups that found an existing word
+    private final AtomicLong bytesSaved = new AtomicLong(); // Estimated heap of the copies not kept
+
+    /**
+     * Returns the dictionary that word stores created from now on share.
+     * @return The shared dictionary.
+     */
+    public static WordDictionary shared() {
+        return shared;
+    }
+
+    /**
+     * Makes a dictionary the one that word stores created from now on share.
+     * Existing word stores keep the dictionary they have.
+     * @param dictionary The dictionary to share, usually a new one.
+     */
+    public static void setShared(WordDictionary dictionary) {
+        shared = dictionary;
+    }
+
+    /**
+     * Returns the canonical copy of a word, adding the word if it is new.
+     * @param word The word.
+     * @return A String equal to the word that is shared by every caller.
+     */
+    public String intern(String word) {
+        return entry(word).word;
+    }
+
+    /**
+     * Returns the id of a word, adding the word if it is new.
+     * @param word The word.
+     * @return The id of the word.
+     */
+    public int idOf(String word) {
+        return entry(word).id;
+    }
+
+    /**
+     * Returns the id of a word without adding it.
+     * @param word The word.
+     * @return The id of the word, or -1 if the word is not in the dictionary.
+     */
+    public int find(String word) {
+        Entry entry = entries.get(word);
+        return entry == null ? -1 : entry.id;
+    }
+
+    /**
+     * Returns the word with the given id.
+     * @param id An id returned by idOf.
+     * @return The word.
+     */
+    public String wordOf(int id) {
+        return table[id];
+    }
+
+    /**
+     * Returns the number of distinct words in the dictionary.
+     * @return The number of words.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether the dictionary holds more words edited out of the catalog than words
+     * still in it, beyond a fixed slack, so the catalog should move to a new dictionary.
+     * The dictionary never forgets a word, so without that a long session of edits would keep
+     * every word it ever saw; the move costs one pass over the words, paid for by the edits
+     * since the last one.
+     * @param liveWords The number of distinct words still in the catalog.
+     * @return true if the dictionary is stale.
+     */
+    public boolean isStale(int liveWords) {
+        return size() > 2 * liveWords + STALE_SLACK;
+    }
+
+    /**
+     * Describes how much the dictionary has deduplicated. A catalog load starts a new
+     * dictionary, so after a load this covers that load alone.
+     * @return A line such as "Word dictionary: 390 distinct words, 4 duplicates shared (~0 KB saved)".
+     */
+    public String report() {
+        return String.format("Word dictionary: %d distinct words, %d duplicates shared (~%d KB saved)",
+                size(), duplicates.get(), bytesSaved.get() / 1024);
+    }
+
+    /**
+     * Looks up the entry of a word, adding one if the word is new.
+     * @param word The word.
+     * @return The entry of the word.
+     */
+    private Entry entry(String word) {
+        Entry entry = entries.get(word);
+        if (entry != null) {
+            if (entry.word != word) {
+                duplicates.incrementAndGet();
+                bytesSaved.addAndGet(stringBytes(word));
+            }
+            return entry;
+        }
+        synchronized (this) {
+            entry = entries.get(word);
+            if (entry == null) {
+                if (size == table.length) {
+                    String[] grown = new String[size * 2];
+                    System.arraycopy(table, 0, grown, 0, size);
+                    table = grown;
+                }
+                // Fill the slot before publishing the entry, so a reader holding the id finds the word
+                table[size] = word;
+                entry = new Entry(word, size);
+                size++;
+                entries.put(word, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Estimates the heap taken by a String: its object, plus the byte array holding one
+     * byte per character (two if any character is outside Latin-1), each rounded to 8 bytes.
+     * @param word The string.
+     * @return The estimated size in bytes.
+     */
+    private static long stringBytes(String word) {
+        int length = word.length();
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) > 0xFF) {
+                length = word.length() * 2;
+                break;
+            }
+        }
+        return 24 + ((16 + length + 7) & ~7);
+    }
+}
@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Catalog-wide inverted index from each word to the topics that contain it,
+ * plus a sorted index of every word for prefix queries.
+ * Word edits go through this class so the index stays in step with the topics.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public class WordIndex {
+    private static final char KEY_SEPARATOR = '\0'; // Sorts before any character of a longer word
+
+    // Inner class Copies counts the copies of one word across the catalog
+    private static class Copies {
+        final String word; // The word as stored in the topics
+        int count;         // Number of copies in the catalog
+
+        /**
+         * Constructs an entry for a word.
+         * @param word The word.
+         */
+        Copies(String word) {
+            this.word = word;
+        }
+    }
+
+    // Inner class Posting stands for one topic in the postings. Vocab compares topics by
+    // content, so equal topics would share a set entry; a posting is equal only to itself
+    private static class Posting {
+        final Vocab vocab; // The topic
+
+        /**
+         * Constructs the posting of a topic.
+         * @param vocab The topic.
+         */
+        Posting(Vocab vocab) {
+            this.vocab = vocab;
+        }
+    }
+
+    // Topics containing each word, in the order they gained it, so a topic is dropped without a scan
+    private final HashMap<String, LinkedHashSet<Posting>> postings = new HashMap<>();
+    // Posting of each topic that has words in the index
+    private final IdentityHashMap<Vocab, Posting> topicPostings = new IdentityHashMap<>();
+    // Number of copies of each word in the catalog, sorted by sortKey so a prefix is a key range
+    private final TreeMap<String, Copies> sortedWords = new TreeMap<>();
+
+    /**
+     * Indexes every word of a topic that was added to the catalog.
+     * @param vocab The added topic.
+     */
+    public void addTopic(Vocab vocab) {
+        Posting posting = postingOf(vocab);
+        for (String word : vocab) {
+            post(word, posting);
+            count(word, 1);
+        }
+    }
+
+    /**
+     * Drops every word of a topic that was removed from the catalog.
+     * @param vocab The removed topic.
+     */
+    public void removeTopic(Vocab vocab) {
+        for (String word : vocab) {
+            unpost(word, vocab);
+            count(word, -1);
+        }
+        topicPostings.remove(vocab);
+    }
+
+    /**
+     * Adds a word to a topic and indexes it.
+     * @param vocab The topic to add to.
+     * @param word The word to add.
+     */
+    public void addWord(Vocab vocab, String word) {
+        boolean present = vocab.containsWord(word);
+        vocab.addWord(word);
+        wordAdded(vocab, word, present);
+    }
+
+    /**
+     * Indexes a word that was already added to a topic, for callers that change the
+     * topic and the index under different locks.
+     * @param vocab The topic that gained the word.
+     * @param word The added word.
+     * @param present Whether the topic held the word before it was added.
+     */
+    public void wordAdded(Vocab vocab, String word, boolean present) {
+        if (!present) {
+            post(word, postingOf(vocab));
+        }
+        count(word, 1);
+    }
+
+    /**
+     * Removes a word from a topic and drops the topic from the word's entry once no copy is left.
+     * @param vocab The topic to remove from.
+     * @param word The word to remove.
+     * @return true if the word is removed successfully, false otherwise.
+     */
+    public boolean removeWord(Vocab vocab, String word) {
+        if (!vocab.removeWord(word)) {
+            return false;
+        }
+        wordRemoved(vocab, word);
+        return true;
+    }
+
+    /**
+     * Drops a word that was already removed from a topic.
+     * @param vocab The topic that lost a copy of the word.
+     * @param word The removed word.
+     */
+    public void wordRemoved(Vocab vocab, String word) {
+        if (!vocab.containsWord(word)) {
+            unpost(word, vocab);
+        }
+        count(word, -1);
+    }
+
+    /**
+     * Replaces a word in a topic and moves the topic between the two words' entries.
+     * @param vocab The topic to change.
+     * @param oldWord The word to be replaced.
+     * @param newWord The new word to replace with.
+     * @return true if the word is replaced successfully, false otherwise.
+     */
+    public boolean changeWord(Vocab vocab, String oldWord, String newWord) {
+        boolean present = vocab.containsWord(newWord);
+        if (!vocab.changeWord(oldWord, newWord)) {
+            return false;
+        }
+        wordChanged(vocab, oldWord, newWord, present);
+        return true;
+    }
+
+    /**
+     * Moves a topic between the entries of a word it already replaced and the new word.
+     * @param vocab The changed topic.
+     * @param oldWord The replaced word.
+     * @param newWord The new word.
+     * @param present Whether the topic held the new word before the change.
+     */
+    public void wordChanged(Vocab vocab, String oldWord, String newWord, boolean present) {
+        if (!vocab.containsWord(oldWord)) {
+            unpost(oldWord, vocab);
+        }
+        if (!present) {
+            post(newWord, postingOf(vocab));
+        }
+        count(oldWord, -1);
+        count(newWord, 1);
+    }
+
+    /**
+     * Looks up the topics containing a word.
+     * @param word The word to search for; surrounding whitespace is ignored.
+     * @return A read-only list of the topics containing the word in the order they gained it,
+     *         empty if there are none.
+     */
+    public List<Vocab> topicsContaining(String word) {
+        LinkedHashSet<Posting> topics = postings.get(word.trim());
+        if (topics == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<Vocab> found = new ArrayList<>(topics.size());
+        for (Posting posting : topics) {
+            found.add(posting.vocab);
+        }
+        return Collections.unmodifiableList(found);
+    }
+
+    /**
+     * Lists every word in the catalog that starts with a prefix, ignoring case.
+     * Only the matching key range of the sorted index is visited.
+     * @param prefix The prefix to match.
+     * @return The matching words sorted case-insensitively, one entry per copy in the catalog.
+     */
+    public List<String> wordsStartingWith(String prefix) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        ArrayList<String> words = new ArrayList<>();
+        for (Copies copies : sortedWords.subMap(from, true, from + Character.MAX_VALUE, false).values()) {
+            for (int i = 0; i < copies.count; i++) {
+                words.add(copies.word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the number of distinct words in the catalog.
+     * @return The number of words with at least one copy.
+     */
+    public int distinctWords() {
+        return postings.size();
+    }
+
+    /**
+     * Removes every entry from the index.
+     */
+    public void clear() {
+        postings.clear();
+        topicPostings.clear();
+        sortedWords.clear();
+    }
+
+    /**
+     * Adjusts the number of copies of a word in the sorted index.
+     * @param word The word.
+     * @param delta The number of copies added, or removed if negative.
+     */
+    private void count(String word, int delta) {
+        String key = sortKey(word);
+        Copies copies = sortedWords.get(key);
+        if (copies == null) {
+            copies = new Copies(word);
+            sortedWords.put(key, copies);
+        }
+        copies.count += delta;
+        if (copies.count <= 0) {
+            sortedWords.remove(key);
+        }
+    }
+
+    /**
+     * Builds the sorted index key of a word: its lower case form, then the word itself
+     * so that words differing only in case stay apart.
+     * @param word The word.
+     * @return The key of the word.
+     */
+    private static String sortKey(String word) {
+        return word.toLowerCase(Locale.ROOT) + KEY_SEPARATOR + word;
+    }
+
+    /**
+     * Returns the posting of a topic, creating it the first time the topic gains a word.
+     * @param vocab The topic.
+     * @return The posting of the topic.
+     */
+    private Posting postingOf(Vocab vocab) {
+        return topicPostings.computeIfAbsent(vocab, Posting::new);
+    }
+
+    /**
+     * Records that a topic contains a word.
+     * @param word The word.
+     * @param posting The posting of the topic containing it.
+     */
+    private void post(String word, Posting posting) {
+        // Duplicate words while indexing a whole topic find the posting already there
+        postings.computeIfAbsent(word, k -> new LinkedHashSet<>(2)).add(posting);
+    }
+
+    /**
+     * Records that a topic no longer contains a word.
+     * @param word The word.
+     * @param vocab The topic that lost it.
+     */
+    private void unpost(String word, Vocab vocab) {
+        LinkedHashSet<Posting> topics = postings.get(word);
+        Posting posting = topicPostings.get(vocab);
+        if (topics == null || posting == null) {
+            return;
+        }
+        topics.remove(posting);
+        if (topics.isEmpty()) {
+            postings.remove(word);
+        }
+    }
+}
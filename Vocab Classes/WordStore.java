@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Storage for the words of one topic, in the order they were added.
+ * Duplicate words are allowed; remove and replace act on the first copy.
+ * @author Mehdi Hanini
+ * @version 4/15/2024
+ */
+public interface WordStore extends Iterable<String> {
+
+    /**
+     * Adds a word to the end of the store.
+     * @param word The word to add.
+     */
+    void addLast(String word);
+
+    /**
+     * Adds words to the end of the store in one go, given as ids into a word dictionary.
+     * Stores may size themselves for all of them first and skip looking the words up again;
+     * by default each word is added with addLast.
+     * @param dictionary The dictionary the ids come from.
+     * @param ids The dictionary id of each word, in order.
+     * @param count The number of ids to add.
+     */
+    default void addAll(WordDictionary dictionary, int[] ids, int count) {
+        for (int i = 0; i < count; i++) {
+            addLast(dictionary.wordOf(ids[i]));
+        }
+    }
+
+    /**
+     * Replaces the first copy of a word with a new word, keeping its position.
+     * @param oldWord the word to be replaced.
+     * @param newWord the new word to replace with.
+     * @return true if the word is replaced successfully, false otherwise.
+     */
+    boolean replace(String oldWord, String newWord);
+
+    /**
+     * Removes the first copy of a word.
+     * @param word the word to remove.
+     * @return true if the word is removed successfully, false otherwise.
+     */
+    boolean remove(String word);
+
+    /**
+     * Checks if the store contains a specific word.
+     * @param word the word to check.
+     * @return true if the word is found, false otherwise
+     */
+    boolean contains(String word);
+
+    /**
+     * Returns the number of words in the store.
+     * @return The number of words.
+     */
+    int size();
+
+    /**
+     * Converts the store to an ArrayList of Strings.
+     * @return An ArrayList containing all words in order.
+     */
+    default ArrayList<String> toList() {
+        ArrayList<String> list = new ArrayList<>(size());
+        forEach(list::add);
+        return list;
+    }
+
+    /**
+     * Checks if another store holds the same words in the same order.
+     * @param other The store to compare with.
+     * @return true if both stores hold equal words in the same order, false otherwise.
+     */
+    default boolean sameWords(WordStore other) {
+        if (size() != other.size()) {
+            return false;
+        }
+        Iterator<String> mine = iterator();
+        Iterator<String> theirs = other.iterator();
+        while (mine.hasNext() && theirs.hasNext()) {
+            if (!mine.next().equals(theirs.next())) {
+                return false;
+            }
+        }
+        return !mine.hasNext() && !theirs.hasNext();
+    }
+}